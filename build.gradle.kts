@@ -3,6 +3,7 @@ plugins {
     id("io.spring.dependency-management") version "1.1.6"
     id("org.springframework.boot") version "3.3.5"
     id("info.solidsoft.pitest") version "1.19.0-rc.3"
+    id("me.champeau.jmh") version "0.7.2"
     pmd
     jacoco
 }
@@ -142,3 +143,19 @@ tasks.register<JavaExec>("benchmarkSearchCsv") {
     mainClass.set("com.al3000.cloudbase.service.search.StringSearchBenchmarkCsvExporter")
     dependsOn(tasks.testClasses)
 }
+
+jmh {
+    // Benchmarks reuse the datasets from StringSearchBenchmark in the test sources
+    includeTests.set(true)
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/benchmarks/search/jmh.json"))
+}
+
+tasks.register<JavaExec>("benchmarkSearchJmhCsv") {
+    group = "verification"
+    description = "Runs the JMH search benchmarks and converts the results to CSV."
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("com.al3000.cloudbase.service.search.JmhResultCsvExporter")
+    dependsOn(tasks.named("jmh"), tasks.testClasses)
+}
@@ -0,0 +1,108 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Per-key cost of turning listed object names into FileFullInfo, run with the gc profiler
+// (configured in build.gradle.kts) to compare gc.alloc.rate.norm per key
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectKeyParserJmhBenchmark {
+
+    private static final int KEYS = 100_000;
+    private static final String USERNAME = "alice";
+    private static final String PREFIX = "user-" + USERNAME + "/";
+
+    private static final String[] FOLDERS = {
+            "photos", "2023", "2024", "summer", "documents", "work", "reports", "music", "projects", "src",
+            "main", "java", "backup", "Фотографии", "archive"
+    };
+    private static final String[] EXTENSIONS = {".jpg", ".png", ".pdf", ".docx", ".txt", ".mp4", ".java", ".zip"};
+
+    // SHALLOW keeps keys a level or two deep, DEEP resembles source trees and photo archives
+    @Param({"SHALLOW", "DEEP"})
+    public String layout;
+
+    private List<String> keys;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(42);
+        int maxDepth = layout.equals("DEEP") ? 8 : 2;
+        keys = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            var key = new StringBuilder(PREFIX);
+            int depth = random.nextInt(maxDepth + 1);
+            for (int level = 0; level < depth; level++) {
+                key.append(FOLDERS[random.nextInt(FOLDERS.length)]).append('/');
+            }
+            // About one key in ten is a folder marker
+            if (depth > 0 && random.nextInt(10) == 0) {
+                keys.add(key.toString());
+                continue;
+            }
+            key.append("file_").append(random.nextInt(1_000_000)).append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            keys.add(key.toString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void offsets(Blackhole blackhole) {
+        for (var key : keys) {
+            blackhole.consume(ObjectKeyParser.parse(USERNAME, PREFIX.length(), key, 1L));
+        }
+    }
+
+    // Parsing as getFolderContent did before ObjectKeyParser, kept as the baseline
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public void substrings(Blackhole blackhole) {
+        for (var key : keys) {
+            blackhole.consume(legacyParse(key, 1L));
+        }
+    }
+
+    private static Optional<FileFullInfo> legacyParse(String objectName, long size) {
+        var isDir = objectName.endsWith("/");
+
+        var noPrefix = objectName.substring(PREFIX.length());
+        if (isDir) {
+            noPrefix = noPrefix.substring(0, noPrefix.length() - 1);
+        }
+
+        var path = noPrefix;
+        String name;
+        if (path.contains("/")) {
+            path = path.substring(0, path.lastIndexOf('/') + 1);
+            name = noPrefix.substring(path.length());
+        } else {
+            name = path;
+            path = "";
+        }
+
+        return Optional.of(new FileFullInfo(USERNAME, path, name, size, isDir));
+    }
+}
@@ -0,0 +1,67 @@
+package com.al3000.cloudbase.service.search;
+
+import com.al3000.cloudbase.dto.FileInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSearchJmhBenchmark {
+
+    // Every StringSearchAlgorithm bean, by name()
+    private static final List<StringSearchAlgorithm> ALGORITHMS = List.of(
+            new NaiveSearch(),
+            new KMPSearch(),
+            new HorspoolSearch(),
+            new LibrarySearch()
+    );
+
+    @Param({"Naive", "Knuth-Morris-Pratt", "Boyer-Moore-Horspool", "Library"})
+    public String algorithm;
+
+    @Param({"REAL", "SYN_N30000", "HARD_N100_L64", "HARD_N100_L512", "HARD_N100_L1024"})
+    public String dataset;
+
+    private StringSearchAlgorithm searchAlgorithm;
+    private List<FileInfo> candidates;
+    private String query;
+
+    @Setup
+    public void setUp() {
+        searchAlgorithm = ALGORITHMS.stream()
+                .filter(candidate -> candidate.name().equals(algorithm))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown algorithm " + algorithm));
+        var data = SearchBenchmarkDataset.parse(dataset);
+        candidates = data.candidates();
+        query = data.query();
+    }
+
+    // One compile per search, as FileService.findFiles does per request
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        var pattern = searchAlgorithm.compile(query);
+        for (FileInfo file : candidates) {
+            if ("File".equals(file.type())) {
+                blackhole.consume(pattern.matches(file.name()));
+            }
+        }
+    }
+}
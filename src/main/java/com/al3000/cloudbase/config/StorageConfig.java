@@ -0,0 +1,19 @@
+package com.al3000.cloudbase.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableScheduling
+public class StorageConfig {
+
+    // Storage calls are blocking network round-trips, virtual threads keep them cheap
+    @Bean(destroyMethod = "close")
+    public ExecutorService storageExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -2,13 +2,18 @@ package com.al3000.cloudbase.controller;
 
 import com.al3000.cloudbase.dto.FileInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderPage;
+import com.al3000.cloudbase.dto.FolderStats;
 import com.al3000.cloudbase.exception.InternalServerException;
 import com.al3000.cloudbase.service.FileService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.List;
 
 @RestController
@@ -16,6 +21,7 @@ import java.util.List;
 @RequestMapping("api/directory")
 public class DirectoryController {
     private final FileService fileService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping
     public ResponseEntity<List<FileInfo>> getFolderContent(Authentication authentication, @RequestParam String path) {
@@ -23,6 +29,42 @@ public class DirectoryController {
         return ResponseEntity.ok().body(folderContent.toList());
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<FolderPage> getFolderPage(Authentication authentication, @RequestParam String path,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "100") int limit) {
+        var page = fileService.getFolderPage(new FilePath(authentication.getName(), path), cursor, limit);
+        return ResponseEntity.ok(page);
+    }
+
+    // Totals come from counters kept on every upload, delete and move, nothing is listed
+    @GetMapping("/usage")
+    public ResponseEntity<FolderStats> getFolderUsage(Authentication authentication, @RequestParam String path) {
+        return ResponseEntity.ok(fileService.getFolderUsage(new FilePath(authentication.getName(), path)));
+    }
+
+    // One JSON object per line, written page by page so memory is bounded by the page size
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFolderContent(Authentication authentication, @RequestParam String path) {
+        var folder = new FilePath(authentication.getName(), path);
+        StreamingResponseBody body = outputStream -> {
+            String cursor = null;
+            do {
+                var page = fileService.getFolderPage(folder, cursor, FileService.MAX_PAGE_SIZE);
+                for (var item : page.items()) {
+                    // writeValue(OutputStream) would close the response stream after the first item
+                    outputStream.write(objectMapper.writeValueAsBytes(item));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+                cursor = page.nextCursor();
+            } while (cursor != null);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @PostMapping
     public ResponseEntity<FileInfo> createFolder(Authentication authentication, @RequestParam String path) throws InternalServerException {
         FileInfo result = fileService.createFolder(new FilePath(authentication.getName(), path));
@@ -2,17 +2,29 @@ package com.al3000.cloudbase.controller;
 
 import com.al3000.cloudbase.dto.FileInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.ObjectMetadata;
+import com.al3000.cloudbase.dto.StoredObject;
 import com.al3000.cloudbase.exception.DestinationAlreadyExistsException;
 import com.al3000.cloudbase.exception.FileDoesNotExistsException;
 import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
 import com.al3000.cloudbase.service.FileService;
+import com.al3000.cloudbase.service.search.MatchMode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @RestController
@@ -20,13 +32,34 @@ import java.util.List;
 @RequestMapping("api/resource")
 public class FileController {
     public final FileService fileService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<String> upload(@RequestParam("object") MultipartFile file, Authentication authentication, @RequestParam String path) throws InternalServerException {
+    public ResponseEntity<String> upload(@RequestParam("object") MultipartFile file, Authentication authentication, @RequestParam String path) throws InternalServerException, QuotaExceededException {
         fileService.uploadFile(file, new FilePath(authentication.getName(), path));
         return ResponseEntity.status(HttpStatus.CREATED).body("result");
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<List<FileInfo>> uploadBatch(@RequestParam("object") List<MultipartFile> files, Authentication authentication,
+                                                      @RequestParam String path) throws InternalServerException, QuotaExceededException {
+        var result = fileService.uploadFiles(files, new FilePath(authentication.getName(), path));
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
+    // Raw request body is piped to storage without multipart parsing or temp files
+    @PutMapping(value = "/stream", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<FileInfo> uploadStream(Authentication authentication, @RequestParam String path, @RequestParam String name,
+                                                 HttpServletRequest request) throws InternalServerException, QuotaExceededException, IOException {
+        var result = fileService.uploadStream(
+                request.getInputStream(),
+                request.getContentLengthLong(),
+                request.getContentType(),
+                new FilePath(authentication.getName(), path + name)
+        );
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
     @DeleteMapping()
     public ResponseEntity<String> delete(Authentication authentication, @RequestParam String path) {
         fileService.removeFile(new FilePath(authentication.getName(), path));
@@ -34,11 +67,38 @@ public class FileController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<FileInfo>> search(Authentication authentication, @RequestParam String query) {
-        var stream = fileService.findFiles(new FilePath(authentication.getName(), ""), query);
+    public ResponseEntity<List<FileInfo>> search(Authentication authentication, @RequestParam String query,
+                                                 @RequestParam(required = false) MatchMode mode,
+                                                 @RequestParam(defaultValue = "0") long offset,
+                                                 @RequestParam(required = false) Long limit) {
+        var stream = fileService.findFiles(new FilePath(authentication.getName(), ""), query, mode,
+                offset, limit == null ? Long.MAX_VALUE : limit);
         return ResponseEntity.ok(stream.toList());
     }
 
+    // Matches are flushed one per line as the listing finds them, so type-ahead clients see the first ones at once
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSearch(Authentication authentication, @RequestParam String query,
+                                                              @RequestParam(required = false) MatchMode mode,
+                                                              @RequestParam(defaultValue = "0") long offset,
+                                                              @RequestParam(required = false) Long limit) {
+        var results = fileService.findFiles(new FilePath(authentication.getName(), ""), query, mode,
+                offset, limit == null ? Long.MAX_VALUE : limit);
+        StreamingResponseBody body = outputStream -> {
+            try (results) {
+                var iterator = results.iterator();
+                while (iterator.hasNext()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                    outputStream.flush();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/move")
     public ResponseEntity<FileInfo> move(Authentication authentication, @RequestParam String from, @RequestParam String to) throws InternalServerException, DestinationAlreadyExistsException {
         var result = fileService.move(
@@ -49,18 +109,136 @@ public class FileController {
     }
 
     @GetMapping("/download")
-    public ResponseEntity<Resource> download(Authentication authentication, @RequestParam String path)
-            throws FileDoesNotExistsException, InternalServerException {
-        var inputStreamResource = fileService.downloadObject(new FilePath(authentication.getName(), path));
+    public ResponseEntity<StreamingResponseBody> download(Authentication authentication, @RequestParam String path,
+                                                          @RequestHeader HttpHeaders headers, WebRequest webRequest)
+            throws FileDoesNotExistsException, InternalServerException, IOException {
+        var filePath = new FilePath(authentication.getName(), path);
+        if (filePath.isDir()) {
+            var body = fileService.downloadObject(filePath);
+
+            var contentDisposition = ContentDisposition.attachment()
+                    .filename(path + ".zip")
+                    .build();
+
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString())
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(body);
+        }
+
+        var responseHeaders = new HttpHeaders();
+        responseHeaders.setContentDisposition(ContentDisposition.attachment()
+                .filename(path)
+                .build());
+        responseHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
 
-        var contentDisposition = ContentDisposition.attachment()
-                .filename(path + ".zip")
-                .build();
+        var rangeHeader = headers.getFirst(HttpHeaders.RANGE);
+        if (rangeHeader == null && !isConditional(headers)) {
+            // Plain downloads take their headers from the GET itself, a single storage round trip
+            return wholeFile(fileService.openFile(filePath), responseHeaders, webRequest);
+        }
 
+        var metadata = fileService.describeFile(filePath);
+        // Also writes ETag and Last-Modified to the response, so they are not repeated below.
+        // A null result tells MVC that the 304 is already complete
+        if (webRequest.checkNotModified(metadata.etag(), metadata.lastModifiedMillis())) {
+            return null;
+        }
+        // Revalidations mostly end in 304 above, the body is only opened once it is known to be sent
+        if (rangeHeader == null || !isRangeStillValid(headers.getFirst(HttpHeaders.IF_RANGE), metadata)) {
+            return wholeFile(fileService.openFile(filePath), responseHeaders, webRequest);
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+            long total = 0;
+            for (var range : ranges) {
+                // Rejects ranges starting past the end of the object
+                total += range.getRangeEnd(metadata.size()) - range.getRangeStart(metadata.size()) + 1;
+            }
+            // Overlapping ranges must not make the response larger than the file itself
+            if (total > metadata.size()) {
+                throw new IllegalArgumentException("Requested ranges exceed file size");
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + metadata.size())
+                    .build();
+        }
+
+        if (ranges.isEmpty()) {
+            return wholeFile(fileService.openFile(filePath), responseHeaders, webRequest);
+        }
+
+        if (ranges.size() == 1) {
+            long start = ranges.getFirst().getRangeStart(metadata.size());
+            long end = ranges.getFirst().getRangeEnd(metadata.size());
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(responseHeaders)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + metadata.size())
+                    .contentType(mediaTypeOf(metadata))
+                    .contentLength(end - start + 1)
+                    .body(fileService.downloadRange(filePath, start, end - start + 1));
+        }
+
+        var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(responseHeaders)
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .body(fileService.downloadRanges(filePath, metadata, ranges, boundary));
+    }
+
+    private ResponseEntity<StreamingResponseBody> wholeFile(StoredObject object, HttpHeaders responseHeaders, WebRequest webRequest)
+            throws IOException {
+        var metadata = object.metadata();
+        if (webRequest.checkNotModified(metadata.etag(), metadata.lastModifiedMillis())) {
+            // Abandons the body that was never read
+            object.close();
+            return null;
+        }
+        if (metadata.size() >= 0) {
+            responseHeaders.setContentLength(metadata.size());
+        }
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition.toString())
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(inputStreamResource);
+                .headers(responseHeaders)
+                .contentType(mediaTypeOf(metadata))
+                .body(fileService.downloadFile(object));
+    }
+
+    static boolean isConditional(HttpHeaders headers) {
+        return headers.containsKey(HttpHeaders.IF_NONE_MATCH)
+                || headers.containsKey(HttpHeaders.IF_MODIFIED_SINCE)
+                || headers.containsKey(HttpHeaders.IF_MATCH)
+                || headers.containsKey(HttpHeaders.IF_UNMODIFIED_SINCE);
+    }
+
+    // Stored content types come from clients, one that doesn't parse is served as plain bytes
+    static MediaType mediaTypeOf(ObjectMetadata metadata) {
+        try {
+            return MediaType.parseMediaType(metadata.contentType());
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
 
+    // Range is served only while If-Range still names the current version, otherwise the whole file is sent
+    static boolean isRangeStillValid(String ifRange, ObjectMetadata metadata) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak validators never match, If-Range requires a strong comparison
+            return ifRange.equals("\"" + metadata.etag() + "\"");
+        }
+        if (metadata.lastModified() == null) {
+            return false;
+        }
+        try {
+            var date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == metadata.lastModified().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,59 @@
+package com.al3000.cloudbase.controller;
+
+import com.al3000.cloudbase.dto.FileInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.UploadPart;
+import com.al3000.cloudbase.dto.UploadStatus;
+import com.al3000.cloudbase.exception.FileDoesNotExistsException;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
+import com.al3000.cloudbase.service.upload.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/resource/uploads")
+public class UploadController {
+    private final ResumableUploadService resumableUploadService;
+
+    @PostMapping
+    public ResponseEntity<UploadStatus> initiate(Authentication authentication, @RequestParam String path, @RequestParam String name,
+                                                 @RequestParam(required = false) String contentType) {
+        var status = resumableUploadService.initiate(new FilePath(authentication.getName(), path + name), contentType);
+        return ResponseEntity.status(HttpStatus.CREATED).body(status);
+    }
+
+    @PutMapping(value = "/{uploadId}/parts/{number}", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<UploadPart> uploadPart(Authentication authentication, @PathVariable String uploadId, @PathVariable int number,
+                                                 HttpServletRequest request) throws FileDoesNotExistsException, InternalServerException, QuotaExceededException, IOException {
+        var part = resumableUploadService.uploadPart(
+                authentication.getName(), uploadId, number, request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.ok(part);
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadStatus> status(Authentication authentication, @PathVariable String uploadId) throws FileDoesNotExistsException {
+        return ResponseEntity.ok(resumableUploadService.status(authentication.getName(), uploadId));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<FileInfo> complete(Authentication authentication, @PathVariable String uploadId)
+            throws FileDoesNotExistsException, InternalServerException, QuotaExceededException {
+        var result = resumableUploadService.complete(authentication.getName(), uploadId);
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abort(Authentication authentication, @PathVariable String uploadId) throws FileDoesNotExistsException {
+        resumableUploadService.abort(authentication.getName(), uploadId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -17,6 +17,24 @@ public record FileFullInfo(String user, String path, @NotEmpty String name, Long
         }
     }
 
+    public static FileFullInfo of(FilePath filePath, Long size) {
+        if (filePath.isDir()) {
+            return new FileFullInfo(
+                    filePath.username(),
+                    filePath.getDirectoryPath(),
+                    filePath.getDirectoryName(),
+                    size,
+                    true);
+        }
+        return new FileFullInfo(
+                filePath.username(),
+                filePath.getFilePath(),
+                filePath.getFileName(),
+                size,
+                false
+        );
+    }
+
     public FilePath getFilePath() {
         return new FilePath(user,
                 path + name + (isDir() ? "/" : "") //Dir name must end with / to comply with specification
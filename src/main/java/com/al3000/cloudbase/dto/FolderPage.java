@@ -0,0 +1,7 @@
+package com.al3000.cloudbase.dto;
+
+import java.util.List;
+
+// nextCursor is the path of the last returned entry, null once the folder is exhausted
+public record FolderPage(List<FileInfo> items, String nextCursor) {
+}
@@ -0,0 +1,5 @@
+package com.al3000.cloudbase.dto;
+
+// Totals over every file below a folder, nested folders included
+public record FolderStats(String path, Long size, Long fileCount) {
+}
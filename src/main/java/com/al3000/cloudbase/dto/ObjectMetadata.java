@@ -0,0 +1,12 @@
+package com.al3000.cloudbase.dto;
+
+import java.time.Instant;
+
+// Etag is kept without the surrounding quotes, as the storage client returns it
+public record ObjectMetadata(long size, String etag, Instant lastModified, String contentType) {
+
+    // -1 disables date based validation when storage didn't report the date
+    public long lastModifiedMillis() {
+        return lastModified == null ? -1 : lastModified.toEpochMilli();
+    }
+}
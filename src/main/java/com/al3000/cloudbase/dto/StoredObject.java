@@ -0,0 +1,13 @@
+package com.al3000.cloudbase.dto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Object body together with the metadata of the same response, no separate stat is needed
+public record StoredObject(ObjectMetadata metadata, InputStream stream) implements Closeable {
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
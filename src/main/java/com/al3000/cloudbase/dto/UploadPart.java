@@ -0,0 +1,4 @@
+package com.al3000.cloudbase.dto;
+
+public record UploadPart(int number, long size) {
+}
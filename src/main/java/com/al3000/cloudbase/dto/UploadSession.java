@@ -0,0 +1,7 @@
+package com.al3000.cloudbase.dto;
+
+public record UploadSession(String id, String username, String path, String contentType) {
+    public FilePath target() {
+        return new FilePath(username, path);
+    }
+}
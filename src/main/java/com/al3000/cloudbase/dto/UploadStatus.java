@@ -0,0 +1,6 @@
+package com.al3000.cloudbase.dto;
+
+import java.util.List;
+
+public record UploadStatus(String uploadId, String path, List<UploadPart> parts) {
+}
@@ -0,0 +1,11 @@
+package com.al3000.cloudbase.exception;
+
+import java.io.Serial;
+
+public class QuotaExceededException extends Exception {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package com.al3000.cloudbase.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Users whose file metadata has been rebuilt from storage at least once
+@Table(name = "file_catalog_owner")
+@Entity
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileCatalogOwner {
+
+    @Id
+    @Column(length = 50)
+    private String owner;
+
+    @Column(name = "reconciled_at", nullable = false)
+    private Instant reconciledAt;
+}
@@ -0,0 +1,64 @@
+package com.al3000.cloudbase.model;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+@Table(
+        name = "file_metadata",
+        indexes = @Index(name = "idx_file_metadata_owner_parent", columnList = "owner, parent_path"),
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_file_metadata_key",
+                columnNames = {"owner", "parent_path", "name", "directory"})
+)
+@Entity
+@Getter
+@NoArgsConstructor
+@RequiredArgsConstructor
+public class FileMetadata {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NonNull
+    @Column(nullable = false, length = 50)
+    private String owner;
+
+    @NonNull
+    @Column(name = "parent_path", nullable = false, length = 1024)
+    private String parentPath;
+
+    @NonNull
+    @Column(nullable = false, length = 1024)
+    private String name;
+
+    @NonNull
+    @Setter
+    @Column(name = "size_bytes", nullable = false)
+    private Long size;
+
+    @NonNull
+    @Column(nullable = false)
+    private Boolean directory;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public static FileMetadata of(FileFullInfo info) {
+        return new FileMetadata(info.user(), info.path(), info.name(), info.size(), info.isDir());
+    }
+
+    public FileFullInfo toFileFullInfo() {
+        return new FileFullInfo(owner, parentPath, name, size, directory);
+    }
+}
@@ -0,0 +1,42 @@
+package com.al3000.cloudbase.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Bytes and file count of everything under a folder, path is relative to the user prefix ("" for the root)
+@Table(
+        name = "folder_usage",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_folder_usage_path",
+                columnNames = {"owner", "path"})
+)
+@Entity
+@Getter
+@NoArgsConstructor
+@RequiredArgsConstructor
+public class FolderUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NonNull
+    @Column(nullable = false, length = 50)
+    private String owner;
+
+    @NonNull
+    @Column(nullable = false, length = 1024)
+    private String path;
+
+    @NonNull
+    @Column(name = "total_bytes", nullable = false)
+    private Long totalBytes;
+
+    @NonNull
+    @Column(name = "file_count", nullable = false)
+    private Long fileCount;
+
+    // Bytes of uploads still being streamed, only kept on the root row
+    @Column(name = "reserved_bytes", nullable = false)
+    private long reservedBytes;
+}
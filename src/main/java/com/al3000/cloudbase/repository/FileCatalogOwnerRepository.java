@@ -0,0 +1,7 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.model.FileCatalogOwner;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface FileCatalogOwnerRepository extends JpaRepository<FileCatalogOwner, String> {
+}
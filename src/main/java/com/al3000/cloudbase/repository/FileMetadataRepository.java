@@ -0,0 +1,53 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.model.FileMetadata;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface FileMetadataRepository extends JpaRepository<FileMetadata, Long> {
+
+    List<FileMetadata> findByOwner(String owner);
+
+    // Served by idx_file_metadata_owner_parent
+    List<FileMetadata> findByOwnerAndParentPath(String owner, String parentPath);
+
+    Optional<FileMetadata> findByOwnerAndParentPathAndNameAndDirectory(
+            String owner, String parentPath, String name, Boolean directory);
+
+    // Both patterns are LIKE patterns escaped with '\', the folder one is a prefix pattern
+    @Query("""
+            select m from FileMetadata m
+            where m.owner = :owner and m.directory = false
+            and m.parentPath like :folder escape '\\' and m.name like :name escape '\\'
+            """)
+    List<FileMetadata> findFilesByNameLike(
+            @Param("owner") String owner,
+            @Param("folder") String folder,
+            @Param("name") String name);
+
+    @Modifying
+    @Query("delete from FileMetadata m where m.owner = :owner")
+    void deleteAllByOwner(@Param("owner") String owner);
+
+    // Pattern is a LIKE prefix pattern escaped with '\'
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from FileMetadata m where m.owner = :owner and m.parentPath like :pattern escape '\\'")
+    void deleteByParentPathLike(@Param("owner") String owner, @Param("pattern") String pattern);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update FileMetadata m
+            set m.parentPath = concat(:target, substring(m.parentPath, :sourceLength + 1))
+            where m.owner = :owner and m.parentPath like :pattern escape '\\'
+            """)
+    void rebaseParentPath(
+            @Param("owner") String owner,
+            @Param("pattern") String pattern,
+            @Param("sourceLength") int sourceLength,
+            @Param("target") String target);
+}
@@ -2,6 +2,8 @@ package com.al3000.cloudbase.repository;
 
 import com.al3000.cloudbase.dto.FileFullInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.ObjectMetadata;
+import com.al3000.cloudbase.dto.StoredObject;
 import com.al3000.cloudbase.exception.FileDoesNotExistsException;
 import com.al3000.cloudbase.exception.InternalServerException;
 import io.minio.*;
@@ -18,8 +20,19 @@ import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -29,25 +42,63 @@ public class FileRepository {
 
     private final MinioClient minioClient;
     private final String userBucketName;
+    private final ExecutorService executor;
+    private final int listingConcurrency;
+    private final int listingReadAhead;
 
     public FileRepository(
             MinioClient minioClient,
-            @Value("${minio.bucket}") String userBucketName
+            @Value("${minio.bucket}") String userBucketName,
+            ExecutorService storageExecutor,
+            @Value("${storage.listing.concurrency:16}") int listingConcurrency,
+            @Value("${storage.listing.read-ahead:4}") int listingReadAhead
     ) {
         this.minioClient = minioClient;
         this.userBucketName = userBucketName;
+        this.executor = storageExecutor;
+        this.listingConcurrency = Math.max(1, listingConcurrency);
+        this.listingReadAhead = Math.max(1, listingReadAhead);
     }
 
     private String getBucketName() {
         return userBucketName;
     }
 
-    public InputStream downloadFile(FilePath path) throws FileDoesNotExistsException, InternalServerException {
+    // Size, type and validators are read from the GET response headers instead of a separate stat
+    public StoredObject openFile(FilePath path) throws FileDoesNotExistsException, InternalServerException {
+        try {
+            var response = minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(getBucketName())
+                            .object(path.getFullPath())
+                            .build()
+            );
+            var headers = response.headers();
+            var etag = headers.get("ETag");
+            var lastModified = headers.getDate("Last-Modified");
+            var metadata = new ObjectMetadata(
+                    Long.parseLong(Objects.requireNonNullElse(headers.get("Content-Length"), "-1")),
+                    etag == null ? null : etag.replace("\"", ""),
+                    lastModified == null ? null : lastModified.toInstant(),
+                    Objects.requireNonNullElse(headers.get("Content-Type"), "application/octet-stream")
+            );
+            return new StoredObject(metadata, response);
+        } catch (InvalidKeyException e) {
+            throw new FileDoesNotExistsException(path, e);
+        } catch (MinioException | NoSuchAlgorithmException | IOException e) {
+            throw new InternalServerException(e);
+        }
+    }
+
+    // Storage serves the slice itself, only length bytes cross the wire
+    public InputStream downloadRange(FilePath path, long offset, long length) throws FileDoesNotExistsException, InternalServerException {
         try {
             return minioClient.getObject(
                     GetObjectArgs.builder()
                             .bucket(getBucketName())
                             .object(path.getFullPath())
+                            .offset(offset)
+                            .length(length)
                             .build()
             );
         } catch (InvalidKeyException e) {
@@ -76,13 +127,90 @@ public class FileRepository {
         }
     }
 
+    // Size may be -1, the client then buffers one part at a time
+    public void uploadStream(InputStream stream, long size, long partSize, String contentType, FilePath path) throws InternalServerException {
+        putStream(path.getFullPath(), stream, size, partSize, contentType);
+    }
+
+    // Staged objects live outside of user prefixes and are addressed by raw keys
+    public void uploadStaged(String key, InputStream stream, long size, long partSize) throws InternalServerException {
+        putStream(key, stream, size, partSize, null);
+    }
+
+    private void putStream(String key, InputStream stream, long size, long partSize, String contentType) throws InternalServerException {
+        try {
+            var args = PutObjectArgs.builder()
+                    .bucket(getBucketName())
+                    .object(key)
+                    .stream(stream, size, partSize);
+            if (contentType != null) {
+                args.contentType(contentType);
+            }
+            minioClient.putObject(args.build());
+        } catch (MinioException | IOException | GeneralSecurityException e) {
+            throw new InternalServerException(e);
+        }
+    }
+
+    // Server-side concatenation, every source but the last must be at least 5MiB
+    public void composeStaged(List<String> keys, FilePath target, String contentType) throws InternalServerException {
+        try {
+            var args = ComposeObjectArgs.builder()
+                    .bucket(getBucketName())
+                    .object(target.getFullPath())
+                    .sources(keys.stream()
+                            .map(key -> ComposeSource.builder().bucket(getBucketName()).object(key).build())
+                            .toList());
+            if (contentType != null) {
+                args.headers(Map.of("Content-Type", contentType));
+            }
+            minioClient.composeObject(args.build());
+        } catch (MinioException | IOException | GeneralSecurityException e) {
+            throw new InternalServerException(e);
+        }
+    }
+
+    public Stream<String> listKeys(String prefix) {
+        return listItems(prefix).map(Item::objectName);
+    }
+
+    // Keys last written before cutoff
+    public Stream<String> listKeysModifiedBefore(String prefix, Instant cutoff) {
+        return listItems(prefix)
+                .filter(item -> item.lastModified() != null && item.lastModified().toInstant().isBefore(cutoff))
+                .map(Item::objectName);
+    }
+
+    private Stream<Item> listItems(String prefix) {
+        var results = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(getBucketName())
+                        .prefix(prefix)
+                        .recursive(true)
+                        .build()
+        );
+        return StreamSupport.stream(results.spliterator(), false)
+                .map(result -> {
+                    try {
+                        return Optional.of(result.get());
+                    } catch (MinioException | IOException | GeneralSecurityException e) {
+                        return Optional.<Item>empty();
+                    }
+                })
+                .flatMap(Optional::stream);
+    }
+
     public void removeFiles(List<FilePath> deleteObjects) {
+        removeKeys(deleteObjects.stream().map(FilePath::getFullPath).toList());
+    }
+
+    public void removeKeys(List<String> keys) {
         minioClient.removeObjects(
                 RemoveObjectsArgs.builder()
                         .bucket(getBucketName())
                         .objects(
-                                deleteObjects.stream()
-                                        .map(x -> new DeleteObject((x.getFullPath())))
+                                keys.stream()
+                                        .map(DeleteObject::new)
                                         .toList())
                         .build()
         ).forEach(result -> {
@@ -97,23 +225,28 @@ public class FileRepository {
                             .object(filePath.getFullPath())
                             .build()
             );
-            var isDir = filePath.path().endsWith("/");
-            if (isDir) {
-                return new FileFullInfo(
-                        filePath.username(),
-                        filePath.getDirectoryPath(),
-                        filePath.getDirectoryName(),
-                        statObject.size(),
-                        true);
-            }
-            return new FileFullInfo(
-                    filePath.username(),
-                    filePath.getFilePath(),
-                    filePath.getFileName(),
+            return FileFullInfo.of(filePath, statObject.size());
+        } catch (InvalidKeyException e) {
+            throw new FileDoesNotExistsException(filePath, e);
+        } catch (MinioException | IOException | GeneralSecurityException e) {
+            throw new InternalServerException(e);
+        }
+    }
+
+    public ObjectMetadata statFile(FilePath filePath) throws FileDoesNotExistsException, InternalServerException {
+        try {
+            var statObject = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(getBucketName())
+                            .object(filePath.getFullPath())
+                            .build()
+            );
+            return new ObjectMetadata(
                     statObject.size(),
-                    false
+                    statObject.etag(),
+                    statObject.lastModified().toInstant(),
+                    Objects.requireNonNullElse(statObject.contentType(), "application/octet-stream")
             );
-
         } catch (InvalidKeyException e) {
             throw new FileDoesNotExistsException(filePath, e);
         } catch (MinioException | IOException | GeneralSecurityException e) {
@@ -145,50 +278,84 @@ public class FileRepository {
         }
     }
 
+    // Recursive content comes in key order, as from a single listing of the folder
     public Stream<FileFullInfo> getFolderContent(FilePath folderPath, Boolean recursive) {
-        return StreamSupport.stream(minioClient.listObjects(
+        if (recursive && listingConcurrency > 1) {
+            return listSharded(folderPath, true);
+        }
+        return toFolderContent(folderPath, listObjects(folderPath.getFullPath(), recursive));
+    }
+
+    // For callers that don't depend on the order, entries come as soon as any sub-prefix has them
+    public Stream<FileFullInfo> getFolderContentUnordered(FilePath folderPath) {
+        if (listingConcurrency > 1) {
+            return listSharded(folderPath, false);
+        }
+        return toFolderContent(folderPath, listObjects(folderPath.getFullPath(), true));
+    }
+
+    private Stream<FileFullInfo> listSharded(FilePath folderPath, boolean ordered) {
+        var username = folderPath.username();
+        var prefixLength = folderPath.getPrefix().length();
+        var listing = new ShardedListing(
+                executor,
+                listingConcurrency,
+                listingReadAhead,
+                ordered,
+                // The merge relies on a page never holding more than PAGE_SIZE entries
+                () -> minioClient.listObjects(
                         ListObjectsArgs.builder()
                                 .bucket(getBucketName())
                                 .prefix(folderPath.getFullPath())
-                                .recursive(recursive)
-                                .build()
-                ).spliterator(), false)
-                .map((file) -> {
-                            Item object;
-                            try {
-                                object = file.get();
-                            } catch (MinioException | IOException | GeneralSecurityException e) {
-                                return Optional.<FileFullInfo>empty();
-                            }
-                            var objectName = object.objectName();
-
-                            var isDir = objectName.endsWith("/");
-
-                            var noPrefix = objectName.substring(folderPath.getPrefix().length());
-                            if (isDir) {
-                                noPrefix = noPrefix.substring(0, noPrefix.length() - 1);
-                            }
-
-                            var path = noPrefix;
-                            String name;
-                            if (path.contains("/")) {
-                                path = path.substring(0, path.lastIndexOf('/') + 1);
-                                name = noPrefix.substring(path.length());
-                            } else {
-                                //Case of empty path
-                                name = path;
-                                path = "";
-                            }
-
-                            return Optional.of(new FileFullInfo(
-                                    folderPath.username(),
-                                    path,
-                                    name,
-                                    object.size(),
-                                    isDir
-                            ));
-                        }
-                ).flatMap(Optional::stream);
+                                .maxKeys(ShardedListing.PAGE_SIZE)
+                                .build()),
+                prefix -> listObjects(prefix, true),
+                object -> ObjectKeyParser.parse(username, prefixLength, object.objectName(), object.size())
+        );
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(listing, ordered ? Spliterator.ORDERED : 0), false);
+    }
+
+    private Iterable<Result<Item>> listObjects(String prefix, boolean recursive) {
+        return minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(getBucketName())
+                        .prefix(prefix)
+                        .recursive(recursive)
+                        .build()
+        );
+    }
+
+    private Stream<FileFullInfo> toFolderContent(FilePath folderPath, Iterable<Result<Item>> objects) {
+        var username = folderPath.username();
+        var prefixLength = folderPath.getPrefix().length();
+        // mapMulti drops unreadable items without boxing every result into an Optional
+        return StreamSupport.stream(objects.spliterator(), false)
+                .mapMulti((Result<Item> result, Consumer<FileFullInfo> sink) -> {
+                    Item object;
+                    try {
+                        object = result.get();
+                    } catch (MinioException | IOException | GeneralSecurityException e) {
+                        return;
+                    }
+                    sink.accept(ObjectKeyParser.parse(username, prefixLength, object.objectName(), object.size()));
+                });
+    }
+
+    // One level of the folder after startAfter, maxKeys is the page size asked from storage,
+    // further pages are only requested while the stream is consumed
+    public Stream<FileFullInfo> getFolderPage(FilePath folderPath, String startAfter, int maxKeys) {
+        var args = ListObjectsArgs.builder()
+                .bucket(getBucketName())
+                .prefix(folderPath.getFullPath())
+                .maxKeys(maxKeys);
+        if (startAfter != null) {
+            var startKey = folderPath.getPrefix() + startAfter;
+            // Keys below a directory cursor would roll up into the same prefix again
+            args.startAfter(startAfter.endsWith("/") ? startKey + Character.MAX_VALUE : startKey);
+        }
+        return toFolderContent(folderPath, minioClient.listObjects(args.build()))
+                .filter(info -> startAfter == null || !info.getFilePath().path().equals(startAfter));
     }
 
     public boolean fileExist(FilePath path) {
@@ -205,6 +372,39 @@ public class FileRepository {
         }
     }
 
+    // One listing over the prefix answers existence for every candidate under it
+    public Set<FilePath> existingKeys(FilePath prefix, Collection<FilePath> candidates) throws InternalServerException {
+        var wanted = candidates.stream()
+                .map(FilePath::getFullPath)
+                .collect(Collectors.toSet());
+        var found = new HashSet<FilePath>();
+        if (wanted.isEmpty()) {
+            return found;
+        }
+
+        var objects = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(getBucketName())
+                        .prefix(prefix.getFullPath())
+                        .recursive(true)
+                        .build()
+        );
+        try {
+            for (var result : objects) {
+                var objectName = result.get().objectName();
+                if (wanted.contains(objectName)) {
+                    found.add(new FilePath(objectName));
+                    if (found.size() == wanted.size()) {
+                        break;
+                    }
+                }
+            }
+        } catch (MinioException | IOException | GeneralSecurityException e) {
+            throw new InternalServerException(e);
+        }
+        return found;
+    }
+
     public void copyObject(FilePath source, FilePath target)
             throws ServerException, InsufficientDataException,
             ErrorResponseException, IOException,
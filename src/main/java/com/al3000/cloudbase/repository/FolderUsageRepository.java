@@ -0,0 +1,80 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.model.FolderUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface FolderUsageRepository extends JpaRepository<FolderUsage, Long> {
+
+    Optional<FolderUsage> findByOwnerAndPath(String owner, String path);
+
+    List<FolderUsage> findByOwnerAndPathIn(String owner, Collection<String> paths);
+
+    // Concurrent first writers of a folder insert the same row, the loser's insert is skipped
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            insert into folder_usage (owner, path, total_bytes, file_count, reserved_bytes)
+            values (:owner, :path, 0, 0, 0)
+            on conflict do nothing
+            """, nativeQuery = true)
+    void insertIfAbsent(@Param("owner") String owner, @Param("path") String path);
+
+    // Counters are changed in place, concurrent writers never overwrite each other's deltas
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update FolderUsage u
+            set u.totalBytes = u.totalBytes + :bytes, u.fileCount = u.fileCount + :files
+            where u.owner = :owner and u.path in :paths
+            """)
+    void add(
+            @Param("owner") String owner,
+            @Param("paths") Collection<String> paths,
+            @Param("bytes") long bytes,
+            @Param("files") long files);
+
+    // Check and reservation are one statement, concurrent uploads can't both fit into the same free space.
+    // No row is updated when the upload doesn't fit or the user has no root row yet
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update FolderUsage u
+            set u.reservedBytes = u.reservedBytes + :bytes
+            where u.owner = :owner and u.path = '' and u.totalBytes + u.reservedBytes + :bytes <= :limit
+            """)
+    int reserve(@Param("owner") String owner, @Param("bytes") long bytes, @Param("limit") long limit);
+
+    // A reconcile rewrites the row with nothing reserved, so a release never goes below zero
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update FolderUsage u
+            set u.reservedBytes = case when u.reservedBytes > :bytes then u.reservedBytes - :bytes else 0L end
+            where u.owner = :owner and u.path = ''
+            """)
+    void release(@Param("owner") String owner, @Param("bytes") long bytes);
+
+    @Modifying
+    @Query("delete from FolderUsage u where u.owner = :owner")
+    void deleteAllByOwner(@Param("owner") String owner);
+
+    // Pattern is a LIKE prefix pattern escaped with '\'
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from FolderUsage u where u.owner = :owner and u.path like :pattern escape '\\'")
+    void deleteByPathLike(@Param("owner") String owner, @Param("pattern") String pattern);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            update FolderUsage u
+            set u.path = concat(:target, substring(u.path, :sourceLength + 1))
+            where u.owner = :owner and u.path like :pattern escape '\\'
+            """)
+    void rebasePath(
+            @Param("owner") String owner,
+            @Param("pattern") String pattern,
+            @Param("sourceLength") int sourceLength,
+            @Param("target") String target);
+}
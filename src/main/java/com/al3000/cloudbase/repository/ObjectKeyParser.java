@@ -0,0 +1,33 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+
+// Splits object keys by offsets, only the final path and name strings are allocated per key
+final class ObjectKeyParser {
+
+    private ObjectKeyParser() {
+    }
+
+    // prefixLength is the length of "user-<name>/", keys ending with '/' are folder markers
+    static FileFullInfo parse(String username, int prefixLength, String objectName, long size) {
+        int length = objectName.length();
+        boolean isDir = objectName.charAt(length - 1) == '/';
+        int end = isDir ? length - 1 : length;
+        if (end <= prefixLength) {
+            // Marker of the user namespace itself
+            return new FileFullInfo(username, "", "", size, true);
+        }
+
+        int slash = objectName.lastIndexOf('/', end - 1);
+        if (slash < prefixLength) {
+            return new FileFullInfo(username, "", objectName.substring(prefixLength, end), size, isDir);
+        }
+        return new FileFullInfo(
+                username,
+                objectName.substring(prefixLength, slash + 1),
+                objectName.substring(slash + 1, end),
+                size,
+                isDir
+        );
+    }
+}
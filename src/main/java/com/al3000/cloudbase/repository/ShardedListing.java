@@ -0,0 +1,305 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import io.minio.Result;
+import io.minio.errors.MinioException;
+import io.minio.messages.Item;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Recursive listing split by the first level of a folder. That level is read lazily from one
+// delimited listing, every sub-prefix found there is listed recursively as its own shard, up to
+// concurrency shards at a time. A sub-prefix is a contiguous key range, so ordered mode merges
+// top-level files and whole shards by key, unordered mode takes whichever chunk is ready.
+// A shard reads at most readAhead chunks past the consumer and no task ever waits for it,
+// an abandoned stream only leaves the requests already in flight to finish
+final class ShardedListing implements Iterator<FileFullInfo> {
+
+    // Page size asked from the delimited listing, also the size of a shard chunk
+    static final int PAGE_SIZE = 1000;
+
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final int readAhead;
+    private final boolean ordered;
+    private final Supplier<Iterable<Result<Item>>> topLevelSource;
+    private final Function<String, Iterable<Result<Item>>> recursive;
+    private final Function<Item, FileFullInfo> parser;
+
+    // Only touched by the thread consuming the listing
+    private Iterator<Result<Item>> topLevel;
+    private boolean topLevelDone;
+    private long position;
+    private final Deque<TopLevelFile> files = new ArrayDeque<>();
+    private final Deque<Shard> discovered = new ArrayDeque<>();
+    private final List<Shard> open = new ArrayList<>();
+    private Iterator<FileFullInfo> chunk = Collections.emptyIterator();
+
+    ShardedListing(
+            ExecutorService executor,
+            int concurrency,
+            int readAhead,
+            boolean ordered,
+            Supplier<Iterable<Result<Item>>> topLevelSource,
+            Function<String, Iterable<Result<Item>>> recursive,
+            Function<Item, FileFullInfo> parser
+    ) {
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.readAhead = readAhead;
+        this.ordered = ordered;
+        this.topLevelSource = topLevelSource;
+        this.recursive = recursive;
+        this.parser = parser;
+    }
+
+    private record TopLevelFile(String key, long position, FileFullInfo info) {
+    }
+
+    private static final class Shard {
+        private final String prefix;
+        private final Deque<List<FileFullInfo>> chunks = new ArrayDeque<>();
+        private Iterator<Result<Item>> objects;
+        private boolean fetching;
+        private boolean exhausted;
+        private RuntimeException failure;
+
+        private Shard(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!chunk.hasNext()) {
+            var next = nextChunk();
+            if (next == null) {
+                return false;
+            }
+            chunk = next.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public FileFullInfo next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return chunk.next();
+    }
+
+    private List<FileFullInfo> nextChunk() {
+        if (topLevel == null) {
+            topLevel = topLevelSource.get().iterator();
+        }
+        return ordered ? nextOrdered() : nextUnordered();
+    }
+
+    // Prefixes arrive in key order and before any later file, so the first open shard is always
+    // the smallest one left. A page lists its files before its prefixes, so a file is only handed
+    // out once the rest of its page has been read and no prefix found there can precede it
+    private List<FileFullInfo> nextOrdered() {
+        while (true) {
+            startShards();
+            var shard = open.isEmpty() ? null : open.getFirst();
+            var file = files.peekFirst();
+            if (shard != null && (file == null || shard.prefix.compareTo(file.key()) < 0)) {
+                var ready = take(shard);
+                if (ready != null) {
+                    return ready;
+                }
+                open.removeFirst();
+                continue;
+            }
+            if (file != null && isSettled(file)) {
+                var ready = new ArrayList<FileFullInfo>();
+                while (ready.size() < PAGE_SIZE && !files.isEmpty() && isSettled(files.peekFirst())
+                        && (shard == null || files.peekFirst().key().compareTo(shard.prefix) < 0)) {
+                    ready.add(files.removeFirst().info());
+                }
+                return ready;
+            }
+            if (topLevelDone) {
+                return null;
+            }
+            readTopLevel();
+        }
+    }
+
+    private List<FileFullInfo> nextUnordered() {
+        while (true) {
+            startShards();
+            var ready = poll(false);
+            if (ready != null) {
+                return ready;
+            }
+            if (!topLevelDone) {
+                // Stops early when a newly found prefix can start listing right away
+                while (!topLevelDone && files.size() < PAGE_SIZE
+                        && (discovered.isEmpty() || open.size() >= concurrency)) {
+                    readTopLevel();
+                }
+                if (!files.isEmpty()) {
+                    var batch = new ArrayList<FileFullInfo>(files.size());
+                    files.forEach(file -> batch.add(file.info()));
+                    files.clear();
+                    return batch;
+                }
+                continue;
+            }
+            if (open.isEmpty()) {
+                // Draining the last open shard may have freed a slot for a waiting one
+                if (discovered.isEmpty()) {
+                    return null;
+                }
+                continue;
+            }
+            ready = poll(true);
+            if (ready != null) {
+                return ready;
+            }
+        }
+    }
+
+    private boolean isSettled(TopLevelFile file) {
+        return topLevelDone || position - file.position() >= PAGE_SIZE;
+    }
+
+    private void readTopLevel() {
+        if (!topLevel.hasNext()) {
+            topLevelDone = true;
+            return;
+        }
+        var index = position++;
+        var item = read(topLevel.next());
+        if (item == null) {
+            return;
+        }
+        if (item.isDir()) {
+            discovered.add(new Shard(item.objectName()));
+            return;
+        }
+        files.add(new TopLevelFile(item.objectName(), index, parser.apply(item)));
+    }
+
+    private synchronized void startShards() {
+        while (open.size() < concurrency && !discovered.isEmpty()) {
+            var shard = discovered.removeFirst();
+            open.add(shard);
+            schedule(shard);
+        }
+    }
+
+    // Next chunk of one shard, null once it is drained
+    private synchronized List<FileFullInfo> take(Shard shard) {
+        while (true) {
+            var ready = shard.chunks.poll();
+            if (ready != null) {
+                schedule(shard);
+                return ready;
+            }
+            if (shard.failure != null) {
+                throw shard.failure;
+            }
+            if (shard.exhausted) {
+                return null;
+            }
+            await();
+        }
+    }
+
+    // Next chunk of any open shard, drained shards are dropped on the way
+    private synchronized List<FileFullInfo> poll(boolean block) {
+        while (true) {
+            var iterator = open.iterator();
+            while (iterator.hasNext()) {
+                var shard = iterator.next();
+                var ready = shard.chunks.poll();
+                if (ready != null) {
+                    schedule(shard);
+                    return ready;
+                }
+                if (shard.failure != null) {
+                    throw shard.failure;
+                }
+                if (shard.exhausted) {
+                    iterator.remove();
+                }
+            }
+            if (!block || open.isEmpty()) {
+                return null;
+            }
+            await();
+        }
+    }
+
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing", e);
+        }
+    }
+
+    private void schedule(Shard shard) {
+        if (!shard.fetching && !shard.exhausted && shard.chunks.size() < readAhead) {
+            shard.fetching = true;
+            executor.execute(() -> fetch(shard));
+        }
+    }
+
+    // Only one fetch per shard runs at a time, so the listing iterator needs no locking
+    private void fetch(Shard shard) {
+        var fetched = new ArrayList<FileFullInfo>();
+        RuntimeException failure = null;
+        boolean exhausted;
+        try {
+            if (shard.objects == null) {
+                shard.objects = recursive.apply(shard.prefix).iterator();
+            }
+            while (fetched.size() < PAGE_SIZE && shard.objects.hasNext()) {
+                var item = read(shard.objects.next());
+                if (item != null) {
+                    fetched.add(parser.apply(item));
+                }
+            }
+            exhausted = !shard.objects.hasNext();
+        } catch (RuntimeException e) {
+            failure = e;
+            exhausted = true;
+        }
+
+        synchronized (this) {
+            shard.fetching = false;
+            shard.exhausted = exhausted;
+            shard.failure = failure;
+            if (!fetched.isEmpty()) {
+                shard.chunks.add(fetched);
+            }
+            schedule(shard);
+            notifyAll();
+        }
+    }
+
+    // Unreadable entries are skipped, as in a sequential listing
+    private static Item read(Result<Item> result) {
+        try {
+            return result.get();
+        } catch (MinioException | IOException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+}
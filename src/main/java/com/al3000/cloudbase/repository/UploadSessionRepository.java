@@ -0,0 +1,81 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.dto.UploadPart;
+import com.al3000.cloudbase.dto.UploadSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Resumable upload state, both hashes expire together when a client stops sending parts
+@Repository
+public class UploadSessionRepository {
+    private static final String KEY_PREFIX = "cloudbase:upload:";
+
+    private final StringRedisTemplate redis;
+    private final Duration ttl;
+
+    public UploadSessionRepository(
+            StringRedisTemplate redis,
+            @Value("${storage.upload.resumable-ttl:P1D}") Duration ttl
+    ) {
+        this.redis = redis;
+        this.ttl = ttl;
+    }
+
+    public void save(UploadSession session) {
+        var key = sessionKey(session.id());
+        redis.opsForHash().putAll(key, Map.of(
+                "username", session.username(),
+                "path", session.path(),
+                "contentType", session.contentType() == null ? "" : session.contentType()
+        ));
+        redis.expire(key, ttl);
+    }
+
+    public Optional<UploadSession> find(String id) {
+        Map<Object, Object> fields = redis.opsForHash().entries(sessionKey(id));
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+        var contentType = (String) fields.get("contentType");
+        return Optional.of(new UploadSession(
+                id,
+                (String) fields.get("username"),
+                (String) fields.get("path"),
+                contentType.isEmpty() ? null : contentType
+        ));
+    }
+
+    public void savePart(String id, UploadPart part) {
+        redis.opsForHash().put(partsKey(id), Integer.toString(part.number()), Long.toString(part.size()));
+        redis.expire(sessionKey(id), ttl);
+        redis.expire(partsKey(id), ttl);
+    }
+
+    public List<UploadPart> parts(String id) {
+        return redis.opsForHash().entries(partsKey(id)).entrySet().stream()
+                .map(entry -> new UploadPart(
+                        Integer.parseInt((String) entry.getKey()),
+                        Long.parseLong((String) entry.getValue())))
+                .sorted(Comparator.comparingInt(UploadPart::number))
+                .toList();
+    }
+
+    public void delete(String id) {
+        redis.delete(List.of(sessionKey(id), partsKey(id)));
+    }
+
+    private static String sessionKey(String id) {
+        return KEY_PREFIX + id;
+    }
+
+    private static String partsKey(String id) {
+        return KEY_PREFIX + id + ":parts";
+    }
+}
@@ -0,0 +1,56 @@
+package com.al3000.cloudbase.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Deflate level per archive entry, already compressed media is written at level 0 instead of being deflated again
+@Component
+public class ArchivePolicy {
+
+    private final Set<String> storedExtensions;
+    private final List<String> storedContentTypes;
+    private final int level;
+
+    public ArchivePolicy(
+            @Value("${storage.archive.stored-extensions:jpg,jpeg,png,gif,webp,heic,mp3,mp4,m4a,mkv,mov,avi,webm,ogg,flac,zip,gz,tgz,7z,rar,xz,bz2,zst,docx,xlsx,pptx}")
+            List<String> storedExtensions,
+            @Value("${storage.archive.stored-content-types:image/jpeg,image/png,image/gif,image/webp,video/,audio/,application/zip,application/gzip}")
+            List<String> storedContentTypes,
+            @Value("${storage.archive.level:6}") int level
+    ) {
+        this.storedExtensions = storedExtensions.stream()
+                .map(extension -> extension.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        // Entries ending with '/' match a whole family, like video/
+        this.storedContentTypes = storedContentTypes.stream()
+                .map(type -> type.trim().toLowerCase(Locale.ROOT))
+                .toList();
+        this.level = Math.clamp(level, 0, 9);
+    }
+
+    public int levelFor(String name, String contentType) {
+        var dot = name.lastIndexOf('.');
+        if (dot >= 0 && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return 0;
+        }
+        if (contentType != null) {
+            var type = contentType.toLowerCase(Locale.ROOT);
+            for (var stored : storedContentTypes) {
+                if (type.startsWith(stored) && (stored.endsWith("/") || matchesWhole(type, stored))) {
+                    return 0;
+                }
+            }
+        }
+        return level;
+    }
+
+    // image/png must not match image/pngx, parameters like "; charset" are allowed after the type
+    private static boolean matchesWhole(String type, String stored) {
+        return type.length() == stored.length() || type.charAt(stored.length()) == ';' || type.charAt(stored.length()) == ' ';
+    }
+}
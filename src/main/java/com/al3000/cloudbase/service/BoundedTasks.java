@@ -0,0 +1,48 @@
+package com.al3000.cloudbase.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+final class BoundedTasks {
+
+    @FunctionalInterface
+    interface StorageTask<T> {
+        void run(T item) throws Exception;
+    }
+
+    private BoundedTasks() {
+    }
+
+    // Runs task for every item with at most concurrency calls in flight, stops scheduling on first failure
+    static <T> Exception forEach(ExecutorService executor, int concurrency, Iterable<T> items, StorageTask<T> task) {
+        var permits = new Semaphore(concurrency);
+        var failure = new AtomicReference<Exception>();
+
+        try {
+            for (var item : items) {
+                permits.acquire();
+                if (failure.get() != null) {
+                    permits.release();
+                    break;
+                }
+                executor.execute(() -> {
+                    try {
+                        task.run(item);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // Every running task holds a permit, taking all of them waits for the rest to finish
+            permits.acquire(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+            permits.acquireUninterruptibly(concurrency);
+        }
+        return failure.get();
+    }
+}
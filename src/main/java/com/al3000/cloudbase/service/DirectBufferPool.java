@@ -0,0 +1,53 @@
+package com.al3000.cloudbase.service;
+
+import io.minio.ObjectWriteArgs;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Part-sized off-heap buffers shared by all uploads, the pool holds at most capacity * bufferSize.
+// The MinIO client still copies each part it sends into a heap buffer of its own
+@Component
+public class DirectBufferPool {
+
+    private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<>();
+    private final int bufferSize;
+    private final int capacity;
+    private int allocated;
+
+    public DirectBufferPool(
+            @Value("${storage.upload.part-size:16MB}") DataSize partSize,
+            @Value("${storage.upload.buffers:8}") int capacity
+    ) {
+        // S3 rejects multipart parts below 5MiB
+        this.bufferSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(ObjectWriteArgs.MIN_MULTIPART_SIZE, partSize.toBytes()));
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    // Blocks while every buffer is in use
+    public ByteBuffer acquire() throws InterruptedException {
+        var buffer = free.poll();
+        if (buffer == null) {
+            synchronized (this) {
+                if (allocated < capacity) {
+                    allocated++;
+                    return ByteBuffer.allocateDirect(bufferSize);
+                }
+            }
+            buffer = free.take();
+        }
+        return buffer.clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        free.add(buffer);
+    }
+}
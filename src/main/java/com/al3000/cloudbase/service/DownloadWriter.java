@@ -0,0 +1,58 @@
+package com.al3000.cloudbase.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Copies object bodies into responses through large reusable buffers.
+// Servlet streams only accept byte arrays, so heap buffers avoid the extra copy an off-heap one would need
+@Component
+public class DownloadWriter {
+
+    private final BlockingQueue<byte[]> free;
+    private final int bufferSize;
+
+    public DownloadWriter(
+            @Value("${storage.download.buffer-size:256KB}") DataSize bufferSize,
+            @Value("${storage.download.buffers:64}") int capacity
+    ) {
+        this.bufferSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(8 * 1024, bufferSize.toBytes()));
+        this.free = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public long transfer(InputStream in, OutputStream out) throws IOException {
+        var buffer = acquire();
+        try {
+            long total = 0;
+            int filled;
+            // Buffer is filled completely before each write, so the connector sees few large writes
+            while ((filled = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                out.write(buffer, 0, filled);
+                total += filled;
+            }
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    // Never blocks a download, buffers beyond the pool capacity are simply dropped after use
+    private byte[] acquire() {
+        var buffer = free.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    private void release(byte[] buffer) {
+        free.offer(buffer);
+    }
+}
@@ -3,43 +3,73 @@ package com.al3000.cloudbase.service;
 import com.al3000.cloudbase.dto.FileFullInfo;
 import com.al3000.cloudbase.dto.FileInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderPage;
+import com.al3000.cloudbase.dto.FolderStats;
+import com.al3000.cloudbase.dto.ObjectMetadata;
+import com.al3000.cloudbase.dto.StoredObject;
 import com.al3000.cloudbase.exception.DestinationAlreadyExistsException;
 import com.al3000.cloudbase.exception.FileDoesNotExistsException;
 import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
 import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.service.index.MetadataIndex;
+import com.al3000.cloudbase.service.search.MatchMode;
+import com.al3000.cloudbase.service.search.MultiPatternSearch;
 import com.al3000.cloudbase.service.search.StringSearchAlgorithm;
-import io.minio.errors.*;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.util.Pair;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import static org.hibernate.internal.util.collections.CollectionHelper.listOf;
 
 @Service
 @RequiredArgsConstructor
 public class FileService {
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final FileRepository fileRepository;
     private final StringSearchAlgorithm searchService;
+    private final MultiPatternSearch multiPatternSearch;
+    private final ObjectPrefetcher objectPrefetcher;
+    private final MoveEngine moveEngine;
+    private final MetadataIndex metadataIndex;
+    private final UploadEngine uploadEngine;
+    private final FolderMarkerManager folderMarkerManager;
+    private final DownloadWriter downloadWriter;
+    private final ArchivePolicy archivePolicy;
+    private final ParallelZipWriter zipWriter;
+    private final StorageQuota storageQuota;
 
     public void addRecursivelyFolders(FilePath path) throws InternalServerException {
+        for (var subpath : ancestorFolders(path)) {
+            if (folderMarkerManager.ensure(subpath)) {
+                metadataIndex.recordFolder(subpath);
+            }
+        }
+    }
+
+    // Every folder on the way to path, including path itself when it is a folder
+    static List<FilePath> ancestorFolders(FilePath path) {
         String[] parts = path.path().split("/");
 
 
         StringBuilder current = new StringBuilder();
+        List<FilePath> folders = new ArrayList<>();
 
         var count = parts.length;
         if (!path.isDir())
@@ -48,36 +78,138 @@ public class FileService {
         for (int i = 0; i < count; i++) {
             current.append(parts[i]);
             current.append("/");
-            var subpath = new FilePath(path.username(), current.toString());
-            fileRepository.createFolder(subpath);
+            folders.add(new FilePath(path.username(), current.toString()));
+        }
+        return folders;
+    }
+
+    public void uploadFile(MultipartFile file, FilePath path) throws InternalServerException, QuotaExceededException {
+        try (var reservation = storageQuota.reserve(path, file.getSize())) {
+            addRecursivelyFolders(path);
+            fileRepository.uploadFile(file, path);
+            metadataIndex.recordFile(new FilePath(path.username(), path.path() + file.getOriginalFilename()), file.getSize());
+        }
+    }
+
+    public List<FileInfo> uploadFiles(List<MultipartFile> files, FilePath folder) throws InternalServerException, QuotaExceededException {
+        var targets = files.stream()
+                .map(file -> Pair.of(file, new FilePath(folder.username(), folder.path() + file.getOriginalFilename())))
+                .toList();
+
+        try (var reservation = storageQuota.reserve(folder, files.stream().mapToLong(MultipartFile::getSize).sum())) {
+            // Each ancestor marker is written once for the whole batch instead of once per file
+            var folders = new LinkedHashSet<FilePath>();
+            targets.forEach(target -> folders.addAll(ancestorFolders(target.getSecond())));
+            uploadEngine.createFolders(folders).forEach(metadataIndex::recordFolder);
+
+            uploadEngine.uploadFiles(targets, metadataIndex::recordFile);
+        }
+        return targets.stream()
+                .map(target -> FileFullInfo.of(target.getSecond(), target.getFirst().getSize()).getFileInfo())
+                .toList();
+    }
+
+    public FileInfo uploadStream(InputStream stream, long size, String contentType, FilePath path) throws InternalServerException, QuotaExceededException {
+        if (path.isDir()) {
+            throw new InternalServerException("Upload target is not a file: " + path.path());
+        }
+        try (var reservation = storageQuota.reserve(path, size)) {
+            addRecursivelyFolders(path);
+            var stored = uploadEngine.upload(stream, size, contentType, path);
+            metadataIndex.recordFile(path, stored);
+            return FileFullInfo.of(path, stored).getFileInfo();
         }
     }
 
-    public void uploadFile(MultipartFile file, FilePath path) throws InternalServerException {
-        addRecursivelyFolders(path);
-        fileRepository.uploadFile(file, path);
+    // Finishes an upload whose bytes were staged elsewhere, with the same folder and index handling as uploadFile
+    public FileInfo uploadComposed(List<String> stagedKeys, long size, String contentType, FilePath path) throws InternalServerException, QuotaExceededException {
+        try (var reservation = storageQuota.reserve(path, size)) {
+            addRecursivelyFolders(path);
+            fileRepository.composeStaged(stagedKeys, path, contentType);
+            metadataIndex.recordFile(path, size);
+            return FileFullInfo.of(path, size).getFileInfo();
+        }
     }
 
     public Stream<FileInfo> getFolderFiles(FilePath filePath) {
-        return fileRepository.getFolderContent(filePath, false)
+        var entries = metadataIndex.find(filePath)
+                .map(index -> index.list(filePath.path()))
+                .or(() -> metadataIndex.listCold(filePath, null, Integer.MAX_VALUE))
+                .orElseGet(() -> fileRepository.getFolderContent(filePath, false))
                 .filter(x -> !x.isRootOfFolder(filePath))
-                .map(FileFullInfo::getFileInfo);
+                .map(FileFullInfo::getFileInfo)
+                .toList();
+        return withFolderSizes(filePath.username(), entries).stream();
+    }
+
+    // Folder markers are empty objects, folders report the total of their files instead
+    private List<FileInfo> withFolderSizes(String username, List<FileInfo> entries) {
+        var folders = entries.stream()
+                .filter(entry -> entry.type().equals("DIRECTORY"))
+                .map(entry -> entry.path() + entry.name())
+                .toList();
+        var sizes = storageQuota.folderSizes(username, folders);
+        if (sizes.isEmpty()) {
+            return entries;
+        }
+        return entries.stream()
+                .map(entry -> {
+                    var size = sizes.get(entry.path() + entry.name());
+                    return size == null || !entry.type().equals("DIRECTORY")
+                            ? entry
+                            : new FileInfo(entry.path(), entry.name(), size, entry.type());
+                })
+                .toList();
+    }
+
+    public FolderStats getFolderUsage(FilePath folder) {
+        // The user root has an empty path and still counts as a folder
+        if (!folder.isDir() && !folder.path().isEmpty()) {
+            folder.throwIsNotDirectory();
+        }
+        return storageQuota.usage(folder);
+    }
+
+    public FolderPage getFolderPage(FilePath folder, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (cursor != null && (!cursor.startsWith(folder.path()) || cursor.equals(folder.path()))) {
+            throw new IllegalArgumentException("Cursor '" + cursor + "' doesn't belong to folder '" + folder.path() + "'");
+        }
+        // One extra entry tells whether another page exists without a second request
+        var entries = metadataIndex.find(folder)
+                .map(index -> index.list(folder.path(), cursor, limit + 1))
+                .or(() -> metadataIndex.listCold(folder, cursor, limit + 1))
+                .orElseGet(() -> fileRepository.getFolderPage(folder, cursor, limit + 1))
+                .filter(x -> !x.isRootOfFolder(folder))
+                .limit(limit + 1)
+                .map(FileFullInfo::getFileInfo)
+                .toList();
+        if (entries.size() <= limit) {
+            return new FolderPage(withFolderSizes(folder.username(), entries), null);
+        }
+        var page = withFolderSizes(folder.username(), entries.subList(0, limit));
+        var last = page.getLast();
+        return new FolderPage(page, last.path() + last.name());
     }
 
     public void removeFile(FilePath path) {
         if (path.path().endsWith("/")) {
-            var removeList = fileRepository.getFolderContent(path, true)
+            var removeList = fileRepository.getFolderContentUnordered(path)
                     .map(FileFullInfo::getFilePath).toList();
             fileRepository.removeFiles(removeList);
+            folderMarkerManager.forget(path);
         } else {
             fileRepository.removeFiles(listOf(path));
         }
+        metadataIndex.remove(path);
     }
 
     public FileInfo move(FilePath path, FilePath target) throws DestinationAlreadyExistsException, InternalServerException {
         List<Pair<FilePath, FilePath>> renameList;
         if (path.path().endsWith("/")) {
-            renameList = fileRepository.getFolderContent(path, true)
+            renameList = fileRepository.getFolderContentUnordered(path)
                     .map(object -> {
                                 var sourcePath = object.getFilePath();
                                 var targetPath = new FilePath(sourcePath.username(),
@@ -89,79 +221,183 @@ public class FileService {
             renameList = listOf(Pair.of(path, target));
         }
 
-        if (renameList.stream().anyMatch(x -> fileRepository.fileExist(x.getSecond())))
+        var existing = fileRepository.existingKeys(target, renameList.stream().map(Pair::getSecond).toList());
+        if (!existing.isEmpty())
             throw new DestinationAlreadyExistsException("File already exists");
 
         try {
             addRecursivelyFolders(target);
 
-            for (var entry : renameList) {
-                fileRepository.copyObject(entry.getFirst(), entry.getSecond());
+            try {
+                moveEngine.copyAll(renameList);
+            } catch (InternalServerException e) {
+                // The rollback may have deleted the target marker written above, it is recreated on demand
+                if (target.isDir() && renameList.stream().anyMatch(pair -> pair.getSecond().equals(target))) {
+                    folderMarkerManager.forget(target);
+                    metadataIndex.remove(target);
+                }
+                throw e;
             }
             fileRepository.removeFiles(renameList.stream()
                     .map(Pair::getFirst)
                     .collect(Collectors.toList()));
+            if (path.isDir()) {
+                folderMarkerManager.forget(path);
+            }
+            metadataIndex.move(path, target);
 
             return fileRepository.getFileInformation(target).getFileInfo();
-        } catch (IOException | FileDoesNotExistsException | ServerException | InsufficientDataException |
-                 ErrorResponseException | NoSuchAlgorithmException | InvalidKeyException | InvalidResponseException
-                 | XmlParserException | InternalException e) {
+        } catch (FileDoesNotExistsException e) {
             throw new InternalServerException(e);
         }
 
     }
 
     public Stream<FileInfo> findFiles(FilePath filePath, String query) {
-        return fileRepository.getFolderContent(filePath, true)
-                .filter(x -> searchService.contains(x.name(), query))
-                .filter(FileFullInfo::isFile)
+        // Pattern tables are built once per request instead of once per name
+        var pattern = searchService.compile(query);
+        return metadataIndex.find(filePath)
+                .map(index -> index.search(filePath.path(), query, pattern))
+                .or(() -> metadataIndex.searchCold(filePath, query)
+                        .map(candidates -> candidates.filter(x -> pattern.matches(x.name()))))
+                .orElseGet(() -> fileRepository.getFolderContent(filePath, true)
+                        .filter(x -> pattern.matches(x.name()))
+                        .filter(FileFullInfo::isFile))
                 .map(FileFullInfo::getFileInfo);
     }
 
-    public InputStreamResource downloadObject(FilePath path) throws FileDoesNotExistsException, InternalServerException {
-        //We can't know is it file or not
-        var info = fileRepository.getFileInformation(path);
-
-        if (info.isFile()) {
-            InputStream inputStream = fileRepository.downloadFile(path);
-            return new InputStreamResource(inputStream);
+    // Without a mode the query is a single phrase, spaces included
+    public Stream<FileInfo> findFiles(FilePath filePath, String query, MatchMode mode) {
+        if (mode == null) {
+            return findFiles(filePath, query);
+        }
+        var terms = multiPatternSearch.terms(query);
+        if (terms.size() < 2) {
+            return findFiles(filePath, query);
         }
 
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ZipOutputStream zipOut = new ZipOutputStream(baos)) {
+        // One automaton per request, every name is scanned once for all terms
+        var automaton = multiPatternSearch.compile(terms, mode);
+        return metadataIndex.find(filePath)
+                .map(index -> index.search(filePath.path(), terms, mode, automaton))
+                .or(() -> metadataIndex.searchCold(filePath, mode == MatchMode.ALL ? longest(terms) : null)
+                        .map(candidates -> candidates.filter(x -> automaton.matches(x.name()))))
+                .orElseGet(() -> fileRepository.getFolderContent(filePath, true)
+                        .filter(FileFullInfo::isFile)
+                        .filter(x -> automaton.matches(x.name())))
+                .map(FileFullInfo::getFileInfo);
+    }
+
+    // Every match contains the longest term, so the catalog query only needs that one
+    private static String longest(List<String> terms) {
+        return terms.stream().max(Comparator.comparingInt(String::length)).orElse(null);
+    }
 
-            downloadFolder(path, zipOut);
-            return new InputStreamResource(
-                    new ByteArrayInputStream(baos.toByteArray()));
+    // The index, the catalog and the storage listing all yield matches in object key order, so an offset means the same
+    // whichever of them serves a page. Streams are lazy, once limit matches are taken the listing stops
+    public Stream<FileInfo> findFiles(FilePath filePath, String query, MatchMode mode, long offset, long limit) {
+        if (offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("Offset must not be negative and limit must be positive");
+        }
+        return findFiles(filePath, query, mode)
+                .skip(offset)
+                .limit(limit);
+    }
 
-        } catch (IOException e) {
-            throw new InternalServerException(e);
+    public ObjectMetadata describeFile(FilePath path) throws FileDoesNotExistsException, InternalServerException {
+        if (path.isDir()) {
+            path.throwIsNotFile();
+        }
+        return fileRepository.statFile(path);
+    }
+
+    public StoredObject openFile(FilePath path) throws FileDoesNotExistsException, InternalServerException {
+        if (path.isDir()) {
+            path.throwIsNotFile();
         }
+        return fileRepository.openFile(path);
+    }
+
+    public StreamingResponseBody downloadFile(StoredObject object) {
+        return outputStream -> {
+            try (object) {
+                downloadWriter.transfer(object.stream(), outputStream);
+            }
+        };
+    }
+
+    public StreamingResponseBody downloadRange(FilePath path, long offset, long length) throws FileDoesNotExistsException, InternalServerException {
+        InputStream inputStream = fileRepository.downloadRange(path, offset, length);
+        return outputStream -> {
+            try (inputStream) {
+                downloadWriter.transfer(inputStream, outputStream);
+            }
+        };
+    }
 
+    // multipart/byteranges body, every part is a separate ranged read opened only when its turn comes
+    public StreamingResponseBody downloadRanges(FilePath path, ObjectMetadata metadata, List<HttpRange> ranges, String boundary) {
+        return outputStream -> {
+            for (var range : ranges) {
+                long start = range.getRangeStart(metadata.size());
+                long end = range.getRangeEnd(metadata.size());
+                var partHeader = "\r\n--" + boundary + "\r\n" +
+                        HttpHeaders.CONTENT_TYPE + ": " + metadata.contentType() + "\r\n" +
+                        HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + metadata.size() + "\r\n\r\n";
+                outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                try (var in = fileRepository.downloadRange(path, start, end - start + 1)) {
+                    downloadWriter.transfer(in, outputStream);
+                } catch (FileDoesNotExistsException | InternalServerException e) {
+                    throw new IOException(e);
+                }
+            }
+            outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
     }
 
-    void downloadFolder(FilePath path, ZipOutputStream zipOut) throws IOException, FileDoesNotExistsException, InternalServerException {
-        for (var file : fileRepository.getFolderContent(path, true).toList()) {
-            // skip folder markers
-            if (file.isDir()) continue;
+    public StreamingResponseBody downloadObject(FilePath path) throws FileDoesNotExistsException, InternalServerException {
+        if (!path.isDir()) {
+            return downloadFile(fileRepository.openFile(path));
+        }
+        // Stat of the folder marker rejects missing folders before the archive is started
+        fileRepository.getFileInformation(path);
 
-            // Read object content
-            try (InputStream in = fileRepository.downloadFile(file.getFilePath())
-            ) {
-                // ZIP entry name should be relative to the folder
-                String entryName = file.getFilePath().path().substring(path.path().length());
+        // Archive is written straight into the response, servlet stream is closed by the container
+        return outputStream -> {
+            try {
+                downloadFolder(path, outputStream);
+            } catch (FileDoesNotExistsException | InternalServerException e) {
+                throw new IOException(e);
+            }
+        };
+    }
 
-                zipOut.putNextEntry(new ZipEntry(entryName));
+    void downloadFolder(FilePath path, OutputStream out) throws IOException, FileDoesNotExistsException, InternalServerException {
+        // Listing is consumed lazily so the archive never holds the whole folder in memory,
+        // folder markers are skipped before their bodies are requested
+        var files = fileRepository.getFolderContent(path, true)
+                .filter(FileFullInfo::isFile)
+                .iterator();
 
-                in.transferTo(zipOut);
+        try (var prefetch = objectPrefetcher.open(files); var archive = zipWriter.open(out)) {
+            ObjectPrefetcher.PrefetchedObject file;
+            while ((file = prefetch.next()) != null) {
+                // Read object content
+                try (InputStream in = file.stream()) {
+                    // ZIP entry name should be relative to the folder
+                    String entryName = file.file().getFilePath().path().substring(path.path().length());
 
-                zipOut.closeEntry();
+                    archive.addEntry(entryName, archivePolicy.levelFor(entryName, file.contentType()), in);
+                }
             }
+            archive.finish();
         }
-        zipOut.finish();
     }
 
     public FileInfo createFolder(FilePath filePath) throws InternalServerException {
-        return fileRepository.createFolder(filePath).getFileInfo();
+        var created = fileRepository.createFolder(filePath);
+        folderMarkerManager.remember(filePath);
+        metadataIndex.recordFolder(filePath);
+        return created.getFileInfo();
     }
 }
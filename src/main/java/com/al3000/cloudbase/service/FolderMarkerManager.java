@@ -0,0 +1,109 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+// Remembers folder markers known to exist, so repeated uploads into the same tree don't rewrite them
+@Component
+public class FolderMarkerManager {
+    private final FileRepository fileRepository;
+    private final int maxFoldersPerUser;
+    private final int maxUsers;
+
+    // Access ordered, so the eldest entry is the least recently used user or folder
+    private final Map<String, Map<String, Boolean>> known;
+    // One creation per marker, concurrent callers wait for it instead of writing it again
+    private final Map<FilePath, CompletableFuture<Void>> creating = new ConcurrentHashMap<>();
+
+    public FolderMarkerManager(
+            FileRepository fileRepository,
+            @Value("${storage.folders.max-users:1000}") int maxUsers,
+            @Value("${storage.folders.max-per-user:10000}") int maxFoldersPerUser
+    ) {
+        this.fileRepository = fileRepository;
+        this.maxUsers = Math.max(1, maxUsers);
+        this.maxFoldersPerUser = Math.max(1, maxFoldersPerUser);
+        this.known = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Boolean>> eldest) {
+                return size() > FolderMarkerManager.this.maxUsers;
+            }
+        };
+    }
+
+    // Returns true when this call wrote the marker
+    public boolean ensure(FilePath folder) throws InternalServerException {
+        if (isKnown(folder)) {
+            return false;
+        }
+        var created = new CompletableFuture<Void>();
+        var running = creating.putIfAbsent(folder, created);
+        if (running != null) {
+            await(running);
+            return false;
+        }
+        try {
+            fileRepository.createFolder(folder);
+            remember(folder);
+            created.complete(null);
+            return true;
+        } catch (InternalServerException | RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            creating.remove(folder, created);
+        }
+    }
+
+    public void remember(FilePath folder) {
+        synchronized (known) {
+            known.computeIfAbsent(folder.getPrefix(), prefix -> newUserFolders()).put(folder.path(), Boolean.TRUE);
+        }
+    }
+
+    // Drops the folder and everything below it, their markers were deleted
+    public void forget(FilePath path) {
+        synchronized (known) {
+            var folders = known.get(path.getPrefix());
+            if (folders != null) {
+                folders.keySet().removeIf(folder -> folder.startsWith(path.path()));
+            }
+        }
+    }
+
+    public boolean isKnown(FilePath folder) {
+        synchronized (known) {
+            var folders = known.get(folder.getPrefix());
+            return folders != null && folders.get(folder.path()) != null;
+        }
+    }
+
+    private Map<String, Boolean> newUserFolders() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxFoldersPerUser;
+            }
+        };
+    }
+
+    private static void await(CompletableFuture<Void> running) throws InternalServerException {
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException(e);
+        } catch (ExecutionException e) {
+            throw new InternalServerException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.repository.FileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Component
+public class MoveEngine {
+    private static final int PROGRESS_STEP = 500;
+
+    private final FileRepository fileRepository;
+    private final ExecutorService executor;
+    private final int concurrency;
+
+    public MoveEngine(
+            FileRepository fileRepository,
+            ExecutorService storageExecutor,
+            @Value("${storage.move.concurrency:16}") int concurrency
+    ) {
+        this.fileRepository = fileRepository;
+        this.executor = storageExecutor;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    public void copyAll(List<Pair<FilePath, FilePath>> renameList) throws InternalServerException {
+        var copied = new ConcurrentLinkedQueue<FilePath>();
+        var done = new AtomicInteger();
+        var total = renameList.size();
+
+        var failure = BoundedTasks.forEach(executor, concurrency, renameList, entry -> {
+            fileRepository.copyObject(entry.getFirst(), entry.getSecond());
+            copied.add(entry.getSecond());
+            var count = done.incrementAndGet();
+            if (count % PROGRESS_STEP == 0 || count == total) {
+                log.info("Copied {}/{} objects", count, total);
+            }
+        });
+
+        if (failure != null) {
+            // Leave the destination as it was before the move started
+            if (!copied.isEmpty()) {
+                log.warn("Move failed after {}/{} objects, rolling back", copied.size(), total);
+                fileRepository.removeFiles(new ArrayList<>(copied));
+            }
+            throw new InternalServerException(failure);
+        }
+    }
+}
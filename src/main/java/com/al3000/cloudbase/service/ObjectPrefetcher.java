@@ -0,0 +1,106 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import com.al3000.cloudbase.dto.StoredObject;
+import com.al3000.cloudbase.exception.FileDoesNotExistsException;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+@Component
+public class ObjectPrefetcher {
+
+    private final FileRepository fileRepository;
+    private final ExecutorService executor;
+    private final int depth;
+
+    public ObjectPrefetcher(
+            FileRepository fileRepository,
+            ExecutorService storageExecutor,
+            @Value("${storage.download.prefetch:8}") int depth
+    ) {
+        this.fileRepository = fileRepository;
+        this.executor = storageExecutor;
+        this.depth = Math.max(1, depth);
+    }
+
+    public Prefetch open(Iterator<FileFullInfo> files) {
+        return new Prefetch(files);
+    }
+
+    public record PrefetchedObject(FileFullInfo file, InputStream stream, String contentType) {
+    }
+
+    private record PendingObject(FileFullInfo file, Future<StoredObject> object) {
+    }
+
+    // Keeps up to depth object streams opening ahead of the consumer, handed out in listing order
+    public final class Prefetch implements AutoCloseable {
+        private final Iterator<FileFullInfo> files;
+        private final Deque<PendingObject> window = new ArrayDeque<>();
+
+        private Prefetch(Iterator<FileFullInfo> files) {
+            this.files = files;
+        }
+
+        public PrefetchedObject next() throws FileDoesNotExistsException, InternalServerException {
+            fill();
+            var head = window.poll();
+            if (head == null) {
+                return null;
+            }
+            // Start the next request before the caller begins consuming this one
+            fill();
+            var object = await(head.object());
+            return new PrefetchedObject(head.file(), object.stream(), object.metadata().contentType());
+        }
+
+        private void fill() {
+            while (window.size() < depth && files.hasNext()) {
+                var file = files.next();
+                window.add(new PendingObject(file,
+                        executor.submit(() -> fileRepository.openFile(file.getFilePath()))));
+            }
+        }
+
+        private StoredObject await(Future<StoredObject> object) throws FileDoesNotExistsException, InternalServerException {
+            try {
+                return object.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalServerException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FileDoesNotExistsException notExists) {
+                    throw notExists;
+                }
+                if (e.getCause() instanceof InternalServerException internal) {
+                    throw internal;
+                }
+                throw new InternalServerException(e.getCause());
+            }
+        }
+
+        @Override
+        public void close() {
+            // Streams opened ahead but never consumed still hold connections
+            while (!window.isEmpty()) {
+                var pending = window.poll();
+                try (var ignored = await(pending.object())) {
+                    // released by try-with-resources
+                } catch (FileDoesNotExistsException | InternalServerException | IOException e) {
+                    // nothing to release
+                }
+            }
+        }
+    }
+}
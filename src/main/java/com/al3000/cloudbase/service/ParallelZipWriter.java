@@ -0,0 +1,321 @@
+package com.al3000.cloudbase.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Zip writer that deflates entries in independent blocks on a fork-join pool, the way pigz does.
+// Every block is compressed without a shared dictionary and ends on a sync flush, so the outputs
+// concatenate into one valid deflate stream. Ordering, CRCs, data descriptors and the central
+// directory stay on the calling thread
+@Component
+public class ParallelZipWriter implements AutoCloseable {
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    // Data descriptor follows each entry, names are UTF-8
+    private static final short FLAGS = 0x0808;
+    private static final short DEFLATED = 8;
+    // Empty final fixed Huffman block, terminates the concatenated blocks of an entry
+    private static final byte[] FINAL_BLOCK = {3, 0};
+
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private final int window;
+
+    public ParallelZipWriter(
+            @Value("${storage.archive.block-size:1MB}") DataSize blockSize,
+            @Value("${storage.archive.parallelism:0}") int parallelism
+    ) {
+        var threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(threads);
+        this.blockSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(4 * 1024, blockSize.toBytes()));
+        // Blocks buffered per archive, memory stays around 2 * threads * blockSize
+        this.window = 2 * threads;
+    }
+
+    public Archive open(OutputStream out) {
+        return new Archive(out);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private interface Segment {
+        void write() throws IOException;
+    }
+
+    private static final class Entry {
+        private final byte[] name;
+        private long offset;
+        private long crc;
+        private long size;
+        private long compressedSize;
+
+        private Entry(byte[] name) {
+            this.name = name;
+        }
+    }
+
+    // Output stream is left open, the servlet container owns it
+    public final class Archive implements AutoCloseable {
+        private final OutputStream out;
+        private final Deque<Segment> pending = new ArrayDeque<>();
+        private final List<Entry> entries = new ArrayList<>();
+        private final int dosTime = dosTime(LocalDateTime.now());
+        private long written;
+
+        private Archive(OutputStream out) {
+            this.out = out;
+        }
+
+        public void addEntry(String name, int level, InputStream in) throws IOException {
+            var entry = new Entry(name.getBytes(StandardCharsets.UTF_8));
+            entries.add(entry);
+            enqueue(() -> {
+                entry.offset = written;
+                write(localHeader(entry));
+            });
+
+            var crc = new CRC32();
+            long size = 0;
+            byte[] block;
+            do {
+                block = in.readNBytes(blockSize);
+                if (block.length == 0) {
+                    break;
+                }
+                crc.update(block);
+                size += block.length;
+                var input = block;
+                var compressed = pool.submit(() -> deflate(input, level));
+                enqueue(() -> {
+                    var bytes = await(compressed);
+                    entry.compressedSize += bytes.length;
+                    write(bytes);
+                });
+            } while (block.length == blockSize);
+
+            entry.crc = crc.getValue();
+            entry.size = size;
+            enqueue(() -> {
+                entry.compressedSize += FINAL_BLOCK.length;
+                write(FINAL_BLOCK);
+                write(dataDescriptor(entry));
+            });
+        }
+
+        public void finish() throws IOException {
+            while (!pending.isEmpty()) {
+                pending.poll().write();
+            }
+
+            long directoryOffset = written;
+            for (var entry : entries) {
+                write(centralHeader(entry));
+            }
+            long directorySize = written - directoryOffset;
+
+            if (entries.size() >= 0xFFFF || directoryOffset >= ZIP64_MAGIC || directorySize >= ZIP64_MAGIC) {
+                long zip64End = written;
+                write(zip64EndRecord(directoryOffset, directorySize));
+                write(zip64Locator(zip64End));
+            }
+            write(endRecord(directoryOffset, directorySize));
+        }
+
+        // Blocks still compressing are left to finish on their own, their output is dropped
+        @Override
+        public void close() {
+            pending.clear();
+        }
+
+        private void enqueue(Segment segment) throws IOException {
+            pending.add(segment);
+            while (pending.size() > window) {
+                pending.poll().write();
+            }
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            written += bytes.length;
+        }
+
+        private byte[] localHeader(Entry entry) {
+            return buffer(30 + entry.name.length)
+                    .putInt(0x04034b50)
+                    .putShort((short) 20)
+                    .putShort(FLAGS)
+                    .putShort(DEFLATED)
+                    .putInt(dosTime)
+                    // CRC and sizes follow the data in the descriptor
+                    .putInt(0)
+                    .putInt(0)
+                    .putInt(0)
+                    .putShort((short) entry.name.length)
+                    .putShort((short) 0)
+                    .put(entry.name)
+                    .array();
+        }
+
+        private byte[] dataDescriptor(Entry entry) {
+            if (entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC) {
+                return buffer(24)
+                        .putInt(0x08074b50)
+                        .putInt((int) entry.crc)
+                        .putLong(entry.compressedSize)
+                        .putLong(entry.size)
+                        .array();
+            }
+            return buffer(16)
+                    .putInt(0x08074b50)
+                    .putInt((int) entry.crc)
+                    .putInt((int) entry.compressedSize)
+                    .putInt((int) entry.size)
+                    .array();
+        }
+
+        private byte[] centralHeader(Entry entry) {
+            boolean largeSize = entry.size >= ZIP64_MAGIC;
+            boolean largeCompressed = entry.compressedSize >= ZIP64_MAGIC;
+            boolean largeOffset = entry.offset >= ZIP64_MAGIC;
+            int zip64Fields = (largeSize ? 1 : 0) + (largeCompressed ? 1 : 0) + (largeOffset ? 1 : 0);
+            int extraLength = zip64Fields == 0 ? 0 : 4 + 8 * zip64Fields;
+            short version = (short) (zip64Fields == 0 ? 20 : 45);
+
+            var header = buffer(46 + entry.name.length + extraLength)
+                    .putInt(0x02014b50)
+                    .putShort(version)
+                    .putShort(version)
+                    .putShort(FLAGS)
+                    .putShort(DEFLATED)
+                    .putInt(dosTime)
+                    .putInt((int) entry.crc)
+                    .putInt(largeCompressed ? -1 : (int) entry.compressedSize)
+                    .putInt(largeSize ? -1 : (int) entry.size)
+                    .putShort((short) entry.name.length)
+                    .putShort((short) extraLength)
+                    // Comment length, disk number, internal and external attributes
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt(largeOffset ? -1 : (int) entry.offset)
+                    .put(entry.name);
+            if (zip64Fields > 0) {
+                header.putShort((short) 1).putShort((short) (extraLength - 4));
+                if (largeSize) {
+                    header.putLong(entry.size);
+                }
+                if (largeCompressed) {
+                    header.putLong(entry.compressedSize);
+                }
+                if (largeOffset) {
+                    header.putLong(entry.offset);
+                }
+            }
+            return header.array();
+        }
+
+        private byte[] zip64EndRecord(long directoryOffset, long directorySize) {
+            return buffer(56)
+                    .putInt(0x06064b50)
+                    .putLong(44)
+                    .putShort((short) 45)
+                    .putShort((short) 45)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entries.size())
+                    .putLong(entries.size())
+                    .putLong(directorySize)
+                    .putLong(directoryOffset)
+                    .array();
+        }
+
+        private byte[] zip64Locator(long zip64End) {
+            return buffer(20)
+                    .putInt(0x07064b50)
+                    .putInt(0)
+                    .putLong(zip64End)
+                    .putInt(1)
+                    .array();
+        }
+
+        private byte[] endRecord(long directoryOffset, long directorySize) {
+            var count = (short) Math.min(entries.size(), 0xFFFF);
+            return buffer(22)
+                    .putInt(0x06054b50)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort(count)
+                    .putShort(count)
+                    .putInt(directorySize >= ZIP64_MAGIC ? -1 : (int) directorySize)
+                    .putInt(directoryOffset >= ZIP64_MAGIC ? -1 : (int) directoryOffset)
+                    .putShort((short) 0)
+                    .array();
+        }
+    }
+
+    private static byte[] deflate(byte[] block, int level) {
+        var deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(block);
+            var out = new ByteArrayOutputStream(block.length / 2 + 64);
+            var buffer = new byte[64 * 1024];
+            int length;
+            // A sync flush that doesn't fill the buffer has emitted all input up to a byte boundary
+            do {
+                length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, length);
+            } while (length == buffer.length);
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] await(Future<byte[]> compressed) throws IOException {
+        try {
+            return compressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        return (time.getYear() - 1980) << 25
+                | time.getMonthValue() << 21
+                | time.getDayOfMonth() << 16
+                | time.getHour() << 11
+                | time.getMinute() << 5
+                | time.getSecond() >> 1;
+    }
+}
@@ -0,0 +1,103 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderStats;
+import com.al3000.cloudbase.exception.QuotaExceededException;
+import com.al3000.cloudbase.service.catalog.MetadataCatalog;
+import com.al3000.cloudbase.service.index.MetadataIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+// Folder totals kept by the catalog on every write, a quota check updates the user's root row instead of listing files
+@Slf4j
+@Component
+public class StorageQuota {
+    private final MetadataCatalog metadataCatalog;
+    private final MetadataIndex metadataIndex;
+    private final long maxBytes;
+
+    public StorageQuota(
+            MetadataCatalog metadataCatalog,
+            MetadataIndex metadataIndex,
+            @Value("${storage.quota.max-bytes:0}") DataSize maxBytes
+    ) {
+        this.metadataCatalog = metadataCatalog;
+        this.metadataIndex = metadataIndex;
+        this.maxBytes = maxBytes.toBytes();
+    }
+
+    public FolderStats usage(FilePath folder) {
+        return metadataCatalog.usage(folder);
+    }
+
+    // Unknown sizes count as zero, so only users already at the limit are stopped. The bytes stay reserved until
+    // the returned reservation is closed, after the catalog has recorded the file. Users without totals yet are
+    // reconciled by the index warm-up instead of inside the request, their uploads and those made while the
+    // catalog is unavailable are let through
+    public Reservation reserve(FilePath target, long incomingBytes) throws QuotaExceededException {
+        if (maxBytes <= 0) {
+            return Reservation.NONE;
+        }
+        var username = target.username();
+        var bytes = Math.max(0, incomingBytes);
+        Optional<FolderStats> usage;
+        try {
+            if (metadataCatalog.reserve(username, bytes, maxBytes)) {
+                return new Reservation(() -> release(username, bytes));
+            }
+            usage = metadataCatalog.findUsage(new FilePath(username, ""));
+        } catch (RuntimeException e) {
+            log.warn("Failed to reserve storage for {}", username, e);
+            return Reservation.NONE;
+        }
+        if (usage.isEmpty()) {
+            metadataIndex.find(new FilePath(username, ""));
+            return Reservation.NONE;
+        }
+        throw new QuotaExceededException("Storage quota of " + maxBytes + " bytes exceeded, "
+                + usage.get().size() + " bytes already used");
+    }
+
+    private void release(String username, long bytes) {
+        try {
+            metadataCatalog.release(username, bytes);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release {} reserved bytes of {}", bytes, username, e);
+        }
+    }
+
+    public static final class Reservation implements AutoCloseable {
+        static final Reservation NONE = new Reservation(() -> {
+        });
+
+        private final Runnable release;
+
+        private Reservation(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void close() {
+            release.run();
+        }
+    }
+
+    // Listings still work without the catalog, folders then keep the size of their marker
+    public Map<String, Long> folderSizes(String username, Collection<String> folders) {
+        if (folders.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            return metadataCatalog.folderSizes(username, folders);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read folder sizes of {}", username, e);
+            return Map.of();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.repository.FileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+// Pipes a request body into storage part by part. Bodies larger than one part are read into pooled
+// buffers and the parts are uploaded concurrently, then concatenated server-side.
+@Slf4j
+@Component
+public class UploadEngine {
+    public static final String PART_PREFIX = ".parts/";
+
+    private final FileRepository fileRepository;
+    private final ExecutorService executor;
+    private final DirectBufferPool bufferPool;
+    private final FolderMarkerManager folderMarkerManager;
+    private final long partSize;
+    private final int parallelism;
+    private final int batchConcurrency;
+
+    public UploadEngine(
+            FileRepository fileRepository,
+            ExecutorService storageExecutor,
+            DirectBufferPool bufferPool,
+            FolderMarkerManager folderMarkerManager,
+            @Value("${storage.upload.parallelism:4}") int parallelism,
+            @Value("${storage.upload.batch-concurrency:8}") int batchConcurrency
+    ) {
+        this.fileRepository = fileRepository;
+        this.executor = storageExecutor;
+        this.bufferPool = bufferPool;
+        this.folderMarkerManager = folderMarkerManager;
+        this.partSize = bufferPool.bufferSize();
+        this.parallelism = Math.max(1, parallelism);
+        this.batchConcurrency = Math.max(1, batchConcurrency);
+    }
+
+    // Returns the number of bytes stored, size may be -1 when the client didn't send a length
+    public long upload(InputStream stream, long size, String contentType, FilePath target) throws InternalServerException {
+        if (size >= 0 && size <= partSize) {
+            var counting = new CountingInputStream(stream);
+            fileRepository.uploadStream(counting, size, partSize, contentType, target);
+            return counting.count;
+        }
+        return uploadParallel(stream, contentType, target);
+    }
+
+    // Returns the folders whose markers were actually written, known ones are skipped
+    public List<FilePath> createFolders(Collection<FilePath> folders) throws InternalServerException {
+        var created = new ConcurrentLinkedQueue<FilePath>();
+        var failure = BoundedTasks.forEach(executor, batchConcurrency, folders, folder -> {
+            if (folderMarkerManager.ensure(folder)) {
+                created.add(folder);
+            }
+        });
+        if (failure != null) {
+            throw new InternalServerException(failure);
+        }
+        return List.copyOf(created);
+    }
+
+    // Files already stored are reported through onStored even when another file of the batch fails
+    public void uploadFiles(List<Pair<MultipartFile, FilePath>> files, BiConsumer<FilePath, Long> onStored) throws InternalServerException {
+        var failure = BoundedTasks.forEach(executor, batchConcurrency, files, entry -> {
+            var file = entry.getFirst();
+            try (var stream = file.getInputStream()) {
+                fileRepository.uploadStream(stream, file.getSize(), partSize, file.getContentType(), entry.getSecond());
+            }
+            onStored.accept(entry.getSecond(), file.getSize());
+        });
+        if (failure != null) {
+            throw new InternalServerException(failure);
+        }
+    }
+
+    public long uploadStaged(InputStream stream, long size, String key) throws InternalServerException {
+        var counting = new CountingInputStream(stream);
+        fileRepository.uploadStaged(key, counting, size, partSize);
+        return counting.count;
+    }
+
+    private long uploadParallel(InputStream stream, String contentType, FilePath target) throws InternalServerException {
+        var channel = Channels.newChannel(stream);
+        var prefix = PART_PREFIX + UUID.randomUUID() + "/";
+        var permits = new Semaphore(parallelism);
+        var failure = new AtomicReference<Exception>();
+        List<String> keys = new ArrayList<>();
+        long total = 0;
+
+        try {
+            boolean last = false;
+            while (!last && failure.get() == null) {
+                // The permit bounds parts in flight for this upload, the pool bounds buffers across uploads
+                permits.acquire();
+                ByteBuffer buffer;
+                try {
+                    buffer = bufferPool.acquire();
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+
+                boolean submitted = false;
+                try {
+                    int read = fill(channel, buffer);
+                    last = buffer.hasRemaining();
+                    buffer.flip();
+                    total += read;
+
+                    if (keys.isEmpty() && last) {
+                        // Whole body fit into one buffer, nothing to stage
+                        fileRepository.uploadStream(new ByteBufferInputStream(buffer), read, partSize, contentType, target);
+                        return total;
+                    }
+                    if (read == 0) {
+                        break;
+                    }
+
+                    var key = prefix + String.format("%05d", keys.size() + 1);
+                    keys.add(key);
+                    executor.execute(() -> {
+                        try {
+                            fileRepository.uploadStaged(key, new ByteBufferInputStream(buffer), read, partSize);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            bufferPool.release(buffer);
+                            permits.release();
+                        }
+                    });
+                    submitted = true;
+                } catch (IOException e) {
+                    throw new InternalServerException(e);
+                } finally {
+                    if (!submitted) {
+                        bufferPool.release(buffer);
+                        permits.release();
+                    }
+                }
+            }
+            // Every running part holds a permit, taking all of them waits for the rest to finish
+            permits.acquire(parallelism);
+            permits.release(parallelism);
+            if (failure.get() != null) {
+                throw new InternalServerException(failure.get());
+            }
+
+            fileRepository.composeStaged(keys, target, contentType);
+            log.debug("Uploaded {} bytes in {} parts to {}", total, keys.size(), target.path());
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException(e);
+        } finally {
+            // Parts must not be removed while uploads of them are still running
+            permits.acquireUninterruptibly(parallelism);
+            if (!keys.isEmpty()) {
+                fileRepository.removeKeys(keys);
+            }
+        }
+    }
+
+    // Reads until the buffer is full or the stream ends
+    private static int fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            // Own position so a retried read of the same part starts from the beginning
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
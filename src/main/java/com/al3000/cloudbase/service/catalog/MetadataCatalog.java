@@ -0,0 +1,249 @@
+package com.al3000.cloudbase.service.catalog;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderStats;
+import com.al3000.cloudbase.model.FileCatalogOwner;
+import com.al3000.cloudbase.model.FileMetadata;
+import com.al3000.cloudbase.model.FolderUsage;
+import com.al3000.cloudbase.repository.FileCatalogOwnerRepository;
+import com.al3000.cloudbase.repository.FileMetadataRepository;
+import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.repository.FolderUsageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Mirror of the object keys in PostgreSQL, so metadata reads don't need to list the bucket
+@Service
+@RequiredArgsConstructor
+public class MetadataCatalog {
+    private static final Comparator<FileFullInfo> KEY_ORDER = Comparator.comparing(info -> info.getFilePath().path());
+
+    private final FileRepository fileRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final FileCatalogOwnerRepository fileCatalogOwnerRepository;
+    private final FolderUsageRepository folderUsageRepository;
+
+    @Transactional
+    public List<FileFullInfo> snapshot(String username) {
+        if (!fileCatalogOwnerRepository.existsById(username)) {
+            return reconcile(username);
+        }
+        return fileMetadataRepository.findByOwner(username).stream()
+                .map(FileMetadata::toFileFullInfo)
+                .toList();
+    }
+
+    @Transactional
+    public List<FileFullInfo> reconcile(String username) {
+        var objects = fileRepository.getFolderContentUnordered(new FilePath(username, ""))
+                // Root marker of the user namespace has no name
+                .filter(info -> !info.name().isEmpty())
+                .toList();
+
+        fileMetadataRepository.deleteAllByOwner(username);
+        fileMetadataRepository.saveAll(objects.stream().map(FileMetadata::of).toList());
+
+        // The root row always exists once reconciled, so an empty namespace reads as zero usage
+        var usage = new LinkedHashMap<String, long[]>();
+        usage.put("", new long[2]);
+        objects.stream().filter(FileFullInfo::isFile).forEach(file -> {
+            for (var folder : foldersOf(file.path())) {
+                var totals = usage.computeIfAbsent(folder, key -> new long[2]);
+                totals[0] += file.size();
+                totals[1]++;
+            }
+        });
+        folderUsageRepository.deleteAllByOwner(username);
+        folderUsageRepository.saveAll(usage.entrySet().stream()
+                .map(entry -> new FolderUsage(username, entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                .toList());
+
+        fileCatalogOwnerRepository.save(new FileCatalogOwner(username, Instant.now()));
+        return objects;
+    }
+
+    @Transactional
+    public void record(FilePath path, long size) {
+        if (path.path().isEmpty()) {
+            return;
+        }
+        var info = FileFullInfo.of(path, size);
+        var existing = fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory(
+                info.user(), info.path(), info.name(), info.isDir());
+        if (existing.isPresent()) {
+            long previous = existing.get().getSize();
+            existing.get().setSize(size);
+            if (info.isFile()) {
+                addUsage(info.user(), foldersOf(info.path()), size - previous, 0);
+            }
+            return;
+        }
+        fileMetadataRepository.save(FileMetadata.of(info));
+        if (info.isFile()) {
+            addUsage(info.user(), foldersOf(info.path()), size, 1);
+        }
+    }
+
+    // Reads a single aggregate row, a user without a catalog yet is rebuilt from storage first
+    @Transactional
+    public FolderStats usage(FilePath folder) {
+        if (!fileCatalogOwnerRepository.existsById(folder.username())) {
+            reconcile(folder.username());
+        }
+        return folderUsageRepository.findByOwnerAndPath(folder.username(), folder.path())
+                .map(usage -> new FolderStats(folder.path(), usage.getTotalBytes(), usage.getFileCount()))
+                .orElseGet(() -> new FolderStats(folder.path(), 0L, 0L));
+    }
+
+    // Direct children in object key order, empty when the user has no catalog yet. Rows are sorted here,
+    // a database collation may not order strings the way storage orders keys
+    @Transactional(readOnly = true)
+    public Optional<List<FileFullInfo>> children(FilePath folder) {
+        if (!fileCatalogOwnerRepository.existsById(folder.username())) {
+            return Optional.empty();
+        }
+        return Optional.of(fileMetadataRepository.findByOwnerAndParentPath(folder.username(), folder.path()).stream()
+                .map(FileMetadata::toFileFullInfo)
+                .sorted(KEY_ORDER)
+                .toList());
+    }
+
+    // Files below folder whose name contains fragment, every file when it is null. Callers still verify
+    // matches with their own pattern, the query only narrows the candidates
+    @Transactional(readOnly = true)
+    public Optional<List<FileFullInfo>> findFiles(FilePath folder, String fragment) {
+        if (!fileCatalogOwnerRepository.existsById(folder.username())) {
+            return Optional.empty();
+        }
+        var name = fragment == null ? "%" : "%" + escapeLike(fragment) + "%";
+        return Optional.of(fileMetadataRepository.findFilesByNameLike(folder.username(), likePrefix(folder.path()), name).stream()
+                .map(FileMetadata::toFileFullInfo)
+                .sorted(KEY_ORDER)
+                .toList());
+    }
+
+    // Reserved bytes count as used. Never rebuilds the catalog, empty when the folder has no totals yet
+    @Transactional(readOnly = true)
+    public Optional<FolderStats> findUsage(FilePath folder) {
+        return folderUsageRepository.findByOwnerAndPath(folder.username(), folder.path())
+                .map(usage -> new FolderStats(folder.path(), usage.getTotalBytes() + usage.getReservedBytes(), usage.getFileCount()));
+    }
+
+    // False when the bytes don't fit under limit or the user has no root totals yet
+    @Transactional
+    public boolean reserve(String username, long bytes, long limit) {
+        return folderUsageRepository.reserve(username, bytes, limit) > 0;
+    }
+
+    @Transactional
+    public void release(String username, long bytes) {
+        folderUsageRepository.release(username, bytes);
+    }
+
+    // Total bytes per folder path, folders without files are missing from the result
+    @Transactional(readOnly = true)
+    public Map<String, Long> folderSizes(String username, Collection<String> folders) {
+        return folderUsageRepository.findByOwnerAndPathIn(username, folders).stream()
+                .collect(Collectors.toMap(FolderUsage::getPath, FolderUsage::getTotalBytes));
+    }
+
+    @Transactional
+    public void remove(FilePath path) {
+        if (path.isDir()) {
+            var parents = foldersOf(FileFullInfo.of(path, 0L).path());
+            folderUsageRepository.findByOwnerAndPath(path.username(), path.path())
+                    .ifPresent(usage -> addUsage(path.username(), parents, -usage.getTotalBytes(), -usage.getFileCount()));
+            folderUsageRepository.deleteByPathLike(path.username(), likePrefix(path.path()));
+            fileMetadataRepository.deleteByParentPathLike(path.username(), likePrefix(path.path()));
+        }
+        if (path.path().isEmpty()) {
+            return;
+        }
+        var info = FileFullInfo.of(path, 0L);
+        fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory(
+                        info.user(), info.path(), info.name(), info.isDir())
+                .ifPresent(existing -> {
+                    fileMetadataRepository.delete(existing);
+                    if (info.isFile()) {
+                        addUsage(info.user(), foldersOf(info.path()), -existing.getSize(), -1);
+                    }
+                });
+    }
+
+    @Transactional
+    public void move(FilePath source, FilePath target) {
+        var info = FileFullInfo.of(source, 0L);
+        var size = fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory(
+                        info.user(), info.path(), info.name(), info.isDir())
+                .map(existing -> {
+                    fileMetadataRepository.delete(existing);
+                    if (info.isFile()) {
+                        addUsage(info.user(), foldersOf(info.path()), -existing.getSize(), -1);
+                    }
+                    return existing.getSize();
+                })
+                .orElse(0L);
+        record(target, size);
+
+        if (source.isDir()) {
+            fileMetadataRepository.rebaseParentPath(
+                    source.username(), likePrefix(source.path()), source.path().length(), target.path());
+
+            // The subtree keeps its own rows, only the ancestors on both sides change
+            var usage = folderUsageRepository.findByOwnerAndPath(source.username(), source.path());
+            usage.ifPresent(moved -> addUsage(source.username(), foldersOf(info.path()),
+                    -moved.getTotalBytes(), -moved.getFileCount()));
+            folderUsageRepository.rebasePath(
+                    source.username(), likePrefix(source.path()), source.path().length(), target.path());
+            usage.ifPresent(moved -> addUsage(target.username(), foldersOf(FileFullInfo.of(target, 0L).path()),
+                    moved.getTotalBytes(), moved.getFileCount()));
+        }
+    }
+
+    // Missing rows are created first, the increment itself runs in the database
+    private void addUsage(String owner, List<String> folders, long bytes, long files) {
+        if (bytes == 0 && files == 0) {
+            return;
+        }
+        var existing = new HashSet<String>();
+        folderUsageRepository.findByOwnerAndPathIn(owner, folders)
+                .forEach(usage -> existing.add(usage.getPath()));
+        folders.stream()
+                .filter(folder -> !existing.contains(folder))
+                .forEach(folder -> folderUsageRepository.insertIfAbsent(owner, folder));
+        folderUsageRepository.add(owner, folders, bytes, files);
+    }
+
+    // The root and every folder on the way to path, path is empty or ends with '/'
+    static List<String> foldersOf(String path) {
+        var folders = new ArrayList<String>();
+        folders.add("");
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            folders.add(path.substring(0, slash + 1));
+        }
+        return folders;
+    }
+
+    private static String likePrefix(String path) {
+        return escapeLike(path) + "%";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
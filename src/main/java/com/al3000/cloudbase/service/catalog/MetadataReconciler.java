@@ -0,0 +1,34 @@
+package com.al3000.cloudbase.service.catalog;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.model.UserDetailCustom;
+import com.al3000.cloudbase.repository.UserRepository;
+import com.al3000.cloudbase.service.index.MetadataIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Periodically rebuilds the catalog from storage to repair drift from failed writes
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MetadataReconciler {
+    private final UserRepository userRepository;
+    private final MetadataCatalog metadataCatalog;
+    private final MetadataIndex metadataIndex;
+
+    @Scheduled(
+            fixedDelayString = "${storage.catalog.reconcile-interval:PT6H}",
+            initialDelayString = "${storage.catalog.reconcile-interval:PT6H}")
+    public void reconcileAll() {
+        for (var username : userRepository.findAll().stream().map(UserDetailCustom::getUsername).toList()) {
+            try {
+                metadataCatalog.reconcile(username);
+                metadataIndex.evict(new FilePath(username, ""));
+            } catch (RuntimeException e) {
+                log.warn("Failed to reconcile file catalog for {}", username, e);
+            }
+        }
+    }
+}
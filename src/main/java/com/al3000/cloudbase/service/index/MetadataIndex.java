@@ -0,0 +1,153 @@
+package com.al3000.cloudbase.service.index;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.service.catalog.MetadataCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+public class MetadataIndex {
+    private final MetadataCatalog metadataCatalog;
+    private final ExecutorService executor;
+    private final int maxUsers;
+    private final Duration idleTimeout;
+
+    // Access ordered, so the eldest entry is the least recently used user
+    private final Map<String, UserIndex> users;
+
+    public MetadataIndex(
+            MetadataCatalog metadataCatalog,
+            ExecutorService storageExecutor,
+            @Value("${storage.index.max-users:1000}") int maxUsers,
+            @Value("${storage.index.idle-timeout:PT30M}") Duration idleTimeout
+    ) {
+        this.metadataCatalog = metadataCatalog;
+        this.executor = storageExecutor;
+        this.maxUsers = Math.max(1, maxUsers);
+        this.idleTimeout = idleTimeout;
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserIndex> eldest) {
+                return size() > MetadataIndex.this.maxUsers;
+            }
+        };
+    }
+
+    // Returns the index only when it is warm, a cold user starts loading in the background
+    public Optional<UserIndex> find(FilePath path) {
+        UserIndex index;
+        synchronized (users) {
+            index = users.get(path.getPrefix());
+            if (index == null) {
+                index = new UserIndex(path.username());
+                users.put(path.getPrefix(), index);
+                warmUp(path.getPrefix(), index);
+            }
+        }
+        index.touch();
+        return index.isReady() ? Optional.of(index) : Optional.empty();
+    }
+
+    // While the index is cold, reads are served by indexed queries on the catalog tables. Empty when the user
+    // has no catalog yet or the database fails, the caller lists storage then
+    public Optional<Stream<FileFullInfo>> listCold(FilePath folder, String startAfter, int limit) {
+        return readCatalog(folder, () -> metadataCatalog.children(folder))
+                .map(children -> children.stream()
+                        .filter(child -> startAfter == null || child.getFilePath().path().compareTo(startAfter) > 0)
+                        .limit(limit));
+    }
+
+    public Optional<Stream<FileFullInfo>> searchCold(FilePath folder, String fragment) {
+        return readCatalog(folder, () -> metadataCatalog.findFiles(folder, fragment))
+                .map(List::stream);
+    }
+
+    public void recordFile(FilePath path, long size) {
+        writeThrough(path, () -> metadataCatalog.record(path, size));
+        peek(path).ifPresent(index -> index.recordFile(path, size));
+    }
+
+    public void recordFolder(FilePath path) {
+        writeThrough(path, () -> metadataCatalog.record(path, 0L));
+        peek(path).ifPresent(index -> index.recordFolder(path));
+    }
+
+    public void remove(FilePath path) {
+        writeThrough(path, () -> metadataCatalog.remove(path));
+        peek(path).ifPresent(index -> index.remove(path));
+    }
+
+    public void move(FilePath source, FilePath target) {
+        writeThrough(source, () -> metadataCatalog.move(source, target));
+        peek(source).ifPresent(index -> index.move(source, target));
+    }
+
+    public void evict(FilePath path) {
+        synchronized (users) {
+            users.remove(path.getPrefix());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.index.sweep-interval:PT1M}")
+    public void evictIdle() {
+        var deadline = System.nanoTime() - idleTimeout.toNanos();
+        synchronized (users) {
+            users.values().removeIf(index -> index.lastAccess() - deadline < 0);
+        }
+    }
+
+    private Optional<UserIndex> peek(FilePath path) {
+        synchronized (users) {
+            return Optional.ofNullable(users.get(path.getPrefix()));
+        }
+    }
+
+    // Storage already holds the change, a failed catalog write is repaired by the reconciler
+    private void writeThrough(FilePath path, Runnable write) {
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to update file catalog for {}", path.getFullPath(), e);
+        }
+    }
+
+    private Optional<List<FileFullInfo>> readCatalog(FilePath path, Supplier<Optional<List<FileFullInfo>>> read) {
+        try {
+            return read.get();
+        } catch (RuntimeException e) {
+            log.warn("Failed to read file catalog for {}", path.getFullPath(), e);
+            return Optional.empty();
+        }
+    }
+
+    private void warmUp(String prefix, UserIndex index) {
+        executor.execute(() -> {
+            try {
+                metadataCatalog.snapshot(index.username())
+                        .forEach(index::load);
+                if (index.markReady()) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to load metadata index for {}", index.username(), e);
+            }
+            // Drop the broken snapshot, the next request loads the user again
+            synchronized (users) {
+                users.remove(prefix, index);
+            }
+        });
+    }
+}
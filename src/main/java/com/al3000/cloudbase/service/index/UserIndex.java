@@ -0,0 +1,197 @@
+package com.al3000.cloudbase.service.index;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.service.search.CompiledPattern;
+import com.al3000.cloudbase.service.search.MatchMode;
+import com.al3000.cloudbase.service.search.TrigramIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+// Metadata of a single user's namespace, keyed by path relative to the user prefix (directories end with '/')
+public class UserIndex {
+    // Object key order, the same as a storage listing, so offset pages line up whichever source served them
+    private static final Comparator<FileFullInfo> SEARCH_ORDER =
+            Comparator.comparing(info -> info.path() + info.name());
+
+    private final String username;
+    private final ConcurrentSkipListMap<String, FileFullInfo> entries = new ConcurrentSkipListMap<>();
+    // File names only, directories never appear in search results
+    private final TrigramIndex<FileFullInfo> fileNames = new TrigramIndex<>();
+
+    private volatile long lastAccess = System.nanoTime();
+    private boolean ready;
+    private boolean stale;
+
+    public UserIndex(String username) {
+        this.username = username;
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    // Returns false when updates arrived during loading and the snapshot can't be trusted
+    public synchronized boolean markReady() {
+        ready = true;
+        return !stale;
+    }
+
+    // Mutations that race the initial load invalidate it instead of being applied
+    private synchronized boolean accept() {
+        if (!ready) {
+            stale = true;
+        }
+        return ready;
+    }
+
+    public void load(FileFullInfo info) {
+        // Root marker of the user namespace has no name
+        if (info.name().isEmpty()) {
+            return;
+        }
+        put(info);
+    }
+
+    public void recordFile(FilePath path, long size) {
+        if (accept()) {
+            put(FileFullInfo.of(path, size));
+        }
+    }
+
+    public void recordFolder(FilePath path) {
+        if (accept() && !path.path().isEmpty()) {
+            put(FileFullInfo.of(path, 0L));
+        }
+    }
+
+    public void remove(FilePath path) {
+        if (accept()) {
+            removeTree(path.path());
+        }
+    }
+
+    public void move(FilePath source, FilePath target) {
+        if (!accept()) {
+            return;
+        }
+        var from = source.path();
+        var to = target.path();
+        List<FileFullInfo> moved = new ArrayList<>();
+        for (var entry : subtree(from).values()) {
+            var relative = entry.getFilePath().path().substring(from.length());
+            moved.add(FileFullInfo.of(new FilePath(username, to + relative), entry.size()));
+        }
+        removeTree(from);
+        moved.forEach(this::put);
+    }
+
+    public Stream<FileFullInfo> list(String folder) {
+        return list(folder, null, Integer.MAX_VALUE);
+    }
+
+    // Children after startAfter in key order, a directory cursor skips its whole subtree
+    public Stream<FileFullInfo> list(String folder, String startAfter, int limit) {
+        List<FileFullInfo> children = new ArrayList<>();
+        Map.Entry<String, FileFullInfo> entry;
+        if (startAfter == null) {
+            entry = entries.ceilingEntry(folder);
+        } else if (startAfter.endsWith("/")) {
+            entry = entries.higherEntry(startAfter + Character.MAX_VALUE);
+        } else {
+            entry = entries.higherEntry(startAfter);
+        }
+        while (entry != null && entry.getKey().startsWith(folder) && children.size() < limit) {
+            var rest = entry.getKey().substring(folder.length());
+            var slash = rest.indexOf('/');
+            if (!rest.isEmpty() && (slash < 0 || slash == rest.length() - 1)) {
+                children.add(entry.getValue());
+            }
+            if (slash >= 0 && slash < rest.length() - 1) {
+                // Deeper descendant, jump over the rest of this child's subtree
+                entry = entries.higherEntry(folder + rest.substring(0, slash + 1) + Character.MAX_VALUE);
+            } else if (slash == rest.length() - 1) {
+                entry = entries.higherEntry(entry.getKey() + Character.MAX_VALUE);
+            } else {
+                entry = entries.higherEntry(entry.getKey());
+            }
+        }
+        return children.stream();
+    }
+
+    public Stream<FileFullInfo> walk(String folder) {
+        return subtree(folder).entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(folder))
+                .map(Map.Entry::getValue);
+    }
+
+    public Stream<FileFullInfo> search(String folder, String query, CompiledPattern pattern) {
+        return fileNames.search(query, pattern).stream()
+                .filter(info -> info.path().startsWith(folder))
+                .sorted(SEARCH_ORDER);
+    }
+
+    public Stream<FileFullInfo> search(String folder, Collection<String> terms, MatchMode mode, CompiledPattern pattern) {
+        return fileNames.search(terms, mode, pattern).stream()
+                .filter(info -> info.path().startsWith(folder))
+                .sorted(SEARCH_ORDER);
+    }
+
+    private Map<String, FileFullInfo> subtree(String path) {
+        if (!path.isEmpty() && !path.endsWith("/")) {
+            var single = entries.get(path);
+            return single == null ? Map.of() : Map.of(path, single);
+        }
+        return entries.subMap(path, true, path + Character.MAX_VALUE, false);
+    }
+
+    private void removeTree(String path) {
+        if (!path.isEmpty() && !path.endsWith("/")) {
+            entries.remove(path);
+            fileNames.remove(path);
+            return;
+        }
+        var subtree = entries.subMap(path, true, path + Character.MAX_VALUE, false);
+        subtree.keySet().forEach(fileNames::remove);
+        subtree.clear();
+    }
+
+    private void put(FileFullInfo info) {
+        var key = info.getFilePath().path();
+        entries.put(key, info);
+        if (info.isFile()) {
+            fileNames.put(key, info.name(), info);
+        }
+        // Object stores have no real directories, make every ancestor listable
+        var slash = key.lastIndexOf('/', key.length() - 2);
+        while (slash > 0) {
+            var parent = key.substring(0, slash + 1);
+            if (entries.putIfAbsent(parent, FileFullInfo.of(new FilePath(username, parent), 0L)) != null) {
+                break;
+            }
+            slash = parent.lastIndexOf('/', parent.length() - 2);
+        }
+    }
+}
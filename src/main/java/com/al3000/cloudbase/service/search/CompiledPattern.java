@@ -0,0 +1,8 @@
+package com.al3000.cloudbase.service.search;
+
+// A pattern prepared once and matched against many texts, implementations must be thread-safe
+@FunctionalInterface
+public interface CompiledPattern {
+
+    boolean matches(String text);
+}
@@ -0,0 +1,56 @@
+package com.al3000.cloudbase.service.search;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+
+@Service
+public class HorspoolSearch implements StringSearchAlgorithm {
+    // Characters are bucketed by their low byte; a collision only shortens the shift, never skips a match
+    private static final int ALPHABET = 256;
+
+    @Override
+    public String name() {
+        return "Boyer-Moore-Horspool";
+    }
+
+    @Override
+    public boolean contains(String text, String pattern) {
+        return compile(pattern).matches(text);
+    }
+
+    @Override
+    public CompiledPattern compile(String pattern) {
+        if (pattern.isEmpty()) {
+            return text -> true;
+        }
+        int[] shift = badCharacterShift(pattern);
+        return text -> matches(text, pattern, shift);
+    }
+
+    private static boolean matches(String text, String pattern, int[] shift) {
+        int last = pattern.length() - 1;
+        int offset = 0;
+
+        while (offset <= text.length() - pattern.length()) {
+            int index = last;
+            while (text.charAt(offset + index) == pattern.charAt(index)) {
+                if (index == 0) {
+                    return true;
+                }
+                index--;
+            }
+            offset += shift[text.charAt(offset + last) & (ALPHABET - 1)];
+        }
+        return false;
+    }
+
+    private static int[] badCharacterShift(String pattern) {
+        int[] shift = new int[ALPHABET];
+        Arrays.fill(shift, pattern.length());
+        for (int index = 0; index < pattern.length() - 1; index++) {
+            shift[pattern.charAt(index) & (ALPHABET - 1)] = pattern.length() - 1 - index;
+        }
+        return shift;
+    }
+}
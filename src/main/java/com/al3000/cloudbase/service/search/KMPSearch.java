@@ -12,14 +12,23 @@ public class KMPSearch implements StringSearchAlgorithm {
 
     @Override
     public boolean contains(String text, String pattern) {
+        return compile(pattern).matches(text);
+    }
+
+    @Override
+    public CompiledPattern compile(String pattern) {
         if (pattern.isEmpty()) {
-            return true;
+            return text -> true;
         }
+        int[] lps = longestPrefixSuffix(pattern);
+        return text -> matches(text, pattern, lps);
+    }
+
+    private static boolean matches(String text, String pattern, int[] lps) {
         if (pattern.length() > text.length()) {
             return false;
         }
 
-        int[] lps = longestPrefixSuffix(pattern);
         int textIndex = 0;
         int patternIndex = 0;
 
@@ -43,7 +52,7 @@ public class KMPSearch implements StringSearchAlgorithm {
         return false;
     }
 
-    private int[] longestPrefixSuffix(String pattern) {
+    private static int[] longestPrefixSuffix(String pattern) {
         int[] lps = new int[pattern.length()];
         int length = 0;
         int index = 1;
@@ -0,0 +1,8 @@
+package com.al3000.cloudbase.service.search;
+
+public enum MatchMode {
+    // Name contains at least one of the terms
+    ANY,
+    // Name contains every term
+    ALL
+}
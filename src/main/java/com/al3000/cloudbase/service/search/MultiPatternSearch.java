@@ -0,0 +1,132 @@
+package com.al3000.cloudbase.service.search;
+
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class MultiPatternSearch {
+    // Matched terms are tracked as bits of a long
+    public static final int MAX_TERMS = Long.SIZE;
+
+    public String name() {
+        return "Aho-Corasick";
+    }
+
+    public List<String> terms(String query) {
+        return Arrays.stream(query.trim().split("\\s+"))
+                .filter(term -> !term.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    public Automaton compile(Collection<String> patterns, MatchMode mode) {
+        var terms = new LinkedHashSet<String>();
+        for (var pattern : patterns) {
+            if (!pattern.isEmpty()) {
+                terms.add(pattern);
+            }
+        }
+        if (terms.size() > MAX_TERMS) {
+            throw new IllegalArgumentException("At most " + MAX_TERMS + " search terms are supported");
+        }
+        return new Automaton(List.copyOf(terms), mode);
+    }
+
+    // Immutable after construction, safe to share between threads
+    public static final class Automaton implements CompiledPattern {
+        private final MatchMode mode;
+        private final long fullMask;
+        // Transitions keyed by (state << 16 | char)
+        private final Map<Long, Integer> transitions = new HashMap<>();
+        private final int[] fail;
+        private final long[] output;
+
+        private Automaton(List<String> terms, MatchMode mode) {
+            this.mode = mode;
+            this.fullMask = terms.size() == MAX_TERMS ? -1L : (1L << terms.size()) - 1;
+
+            var outputs = new ArrayList<Long>();
+            outputs.add(0L);
+            for (int term = 0; term < terms.size(); term++) {
+                int state = 0;
+                for (char c : terms.get(term).toCharArray()) {
+                    var next = transitions.get(key(state, c));
+                    if (next == null) {
+                        next = outputs.size();
+                        outputs.add(0L);
+                        transitions.put(key(state, c), next);
+                    }
+                    state = next;
+                }
+                outputs.set(state, outputs.get(state) | (1L << term));
+            }
+
+            output = outputs.stream().mapToLong(Long::longValue).toArray();
+            fail = new int[output.length];
+            buildFailureLinks();
+        }
+
+        @Override
+        public boolean matches(String text) {
+            if (fullMask == 0) {
+                return true;
+            }
+            int state = 0;
+            long found = 0;
+            for (int i = 0; i < text.length(); i++) {
+                state = step(state, text.charAt(i));
+                found |= output[state];
+                if (mode == MatchMode.ANY ? found != 0 : found == fullMask) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int step(int state, char c) {
+            while (true) {
+                var next = transitions.get(key(state, c));
+                if (next != null) {
+                    return next;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = fail[state];
+            }
+        }
+
+        private void buildFailureLinks() {
+            // Children of a state, grouped once so the BFS doesn't rescan every transition
+            var children = new HashMap<Integer, List<long[]>>();
+            transitions.forEach((key, child) -> children
+                    .computeIfAbsent((int) (key >>> 16), k -> new ArrayList<>())
+                    .add(new long[]{key & 0xFFFF, child}));
+
+            var queue = new ArrayDeque<Integer>();
+            queue.add(0);
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (var edge : children.getOrDefault(state, List.of())) {
+                    char c = (char) edge[0];
+                    int child = (int) edge[1];
+                    fail[child] = state == 0 ? 0 : step(fail[state], c);
+                    output[child] |= output[fail[child]];
+                    queue.add(child);
+                }
+            }
+        }
+
+        private static long key(int state, char c) {
+            return ((long) state << 16) | c;
+        }
+    }
+}
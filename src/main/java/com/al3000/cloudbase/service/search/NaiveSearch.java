@@ -12,19 +12,29 @@ public class NaiveSearch implements StringSearchAlgorithm {
 
     @Override
     public boolean contains(String text, String pattern) {
+        return compile(pattern).matches(text);
+    }
+
+    @Override
+    public CompiledPattern compile(String pattern) {
         if (pattern.isEmpty()) {
-            return true;
+            return text -> true;
         }
-        if (pattern.length() > text.length()) {
+        char[] chars = pattern.toCharArray();
+        return text -> matches(text, chars);
+    }
+
+    private static boolean matches(String text, char[] pattern) {
+        if (pattern.length > text.length()) {
             return false;
         }
 
-        for (int offset = 0; offset <= text.length() - pattern.length(); offset++) {
+        for (int offset = 0; offset <= text.length() - pattern.length; offset++) {
             int index = 0;
-            while (index < pattern.length() && text.charAt(offset + index) == pattern.charAt(index)) {
+            while (index < pattern.length && text.charAt(offset + index) == pattern[index]) {
                 index++;
             }
-            if (index == pattern.length()) {
+            if (index == pattern.length) {
                 return true;
             }
         }
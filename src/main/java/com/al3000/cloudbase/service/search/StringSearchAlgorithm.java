@@ -5,4 +5,9 @@ public interface StringSearchAlgorithm {
     String name();
 
     boolean contains(String text, String pattern);
+
+    // Algorithms with per-pattern tables override this to build them once
+    default CompiledPattern compile(String pattern) {
+        return text -> contains(text, pattern);
+    }
 }
@@ -0,0 +1,250 @@
+package com.al3000.cloudbase.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inverted index from every 3-character substring of a name to the documents containing it.
+// Candidates are verified by a compiled pattern, so results equal a linear scan with it.
+public class TrigramIndex<T> {
+    private static final int GRAM = 3;
+    private static final int MIN_COMPACTION = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<Long, PostingList> postings = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<T> values = new ArrayList<>();
+    private int dead;
+
+    private static final class PostingList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            // Ids are handed out in increasing order, so lists stay sorted
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    public void put(String key, String name, T value) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            insert(key, name, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            if (dead >= MIN_COMPACTION && dead > live.cardinality()) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<T> search(String query, CompiledPattern pattern) {
+        lock.readLock().lock();
+        try {
+            List<T> result = new ArrayList<>();
+            if (query.length() < GRAM) {
+                // Too short to have a trigram, every document is a candidate
+                for (int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1)) {
+                    verify(id, pattern, result);
+                }
+                return result;
+            }
+            for (int id : candidates(query)) {
+                if (live.get(id)) {
+                    verify(id, pattern, result);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Candidates of every term are united for ANY and intersected for ALL, then verified by the pattern.
+    // A term shorter than a trigram constrains nothing, for ANY it makes every document a candidate
+    public List<T> search(Collection<String> terms, MatchMode mode, CompiledPattern pattern) {
+        lock.readLock().lock();
+        try {
+            int[] matched = mode == MatchMode.ALL ? allCandidates(terms) : anyCandidates(terms);
+            List<T> result = new ArrayList<>();
+            if (matched == null) {
+                for (int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1)) {
+                    verify(id, pattern, result);
+                }
+                return result;
+            }
+            for (int id : matched) {
+                if (live.get(id)) {
+                    verify(id, pattern, result);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Null means every document is a candidate
+    private int[] allCandidates(Collection<String> terms) {
+        int[] result = null;
+        for (var term : terms) {
+            if (term.length() < GRAM) {
+                continue;
+            }
+            var candidates = candidates(term);
+            result = result == null ? candidates : intersect(result, candidates, candidates.length);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int[] anyCandidates(Collection<String> terms) {
+        var result = new BitSet();
+        for (var term : terms) {
+            if (term.length() < GRAM) {
+                return null;
+            }
+            for (int id : candidates(term)) {
+                result.set(id);
+            }
+        }
+        return result.stream().toArray();
+    }
+
+    private void verify(int id, CompiledPattern pattern, List<T> result) {
+        if (pattern.matches(names.get(id))) {
+            result.add(values.get(id));
+        }
+    }
+
+    private int[] candidates(String query) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            grams.add(gram(query, i));
+        }
+        List<PostingList> lists = new ArrayList<>(grams.size());
+        for (var gram : grams) {
+            var list = postings.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        // Intersect starting from the rarest trigram to keep intermediate results small
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        var result = Arrays.copyOf(lists.getFirst().ids, lists.getFirst().size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i).ids, lists.get(i).size);
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] left, int[] right, int rightSize) {
+        var result = new int[Math.min(left.length, rightSize)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < rightSize) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[count++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void removeLocked(String key) {
+        var id = ids.remove(key);
+        if (id != null) {
+            live.clear(id);
+            names.set(id, null);
+            values.set(id, null);
+            dead++;
+        }
+    }
+
+    // Drops removed documents from the posting lists and renumbers the remaining ones
+    private void compact() {
+        var liveKeys = new ArrayList<String>();
+        var liveNames = new ArrayList<String>();
+        var liveValues = new ArrayList<T>();
+        for (int id = live.nextSetBit(0); id >= 0; id = live.nextSetBit(id + 1)) {
+            liveKeys.add(keys.get(id));
+            liveNames.add(names.get(id));
+            liveValues.add(values.get(id));
+        }
+        ids.clear();
+        postings.clear();
+        live.clear();
+        keys.clear();
+        names.clear();
+        values.clear();
+        dead = 0;
+        for (int i = 0; i < liveKeys.size(); i++) {
+            insert(liveKeys.get(i), liveNames.get(i), liveValues.get(i));
+        }
+    }
+
+    private void insert(String key, String name, T value) {
+        var id = keys.size();
+        keys.add(key);
+        names.add(name);
+        values.add(value);
+        live.set(id);
+        ids.put(key, id);
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            postings.computeIfAbsent(gram(name, i), gram -> new PostingList()).add(id);
+        }
+    }
+
+    private static long gram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32)
+                | ((long) text.charAt(offset + 1) << 16)
+                | text.charAt(offset + 2);
+    }
+}
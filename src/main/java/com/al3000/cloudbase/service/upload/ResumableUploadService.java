@@ -0,0 +1,165 @@
+package com.al3000.cloudbase.service.upload;
+
+import com.al3000.cloudbase.dto.FileInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.UploadPart;
+import com.al3000.cloudbase.dto.UploadSession;
+import com.al3000.cloudbase.dto.UploadStatus;
+import com.al3000.cloudbase.exception.FileDoesNotExistsException;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
+import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.repository.UploadSessionRepository;
+import com.al3000.cloudbase.service.FileService;
+import com.al3000.cloudbase.service.StorageQuota;
+import com.al3000.cloudbase.service.UploadEngine;
+import io.minio.ObjectWriteArgs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+// Parts are staged as separate objects and concatenated server-side on completion
+@Slf4j
+@Service
+public class ResumableUploadService {
+    static final String STAGING_PREFIX = ".uploads/";
+    // Same limit as S3 multipart uploads
+    static final int MAX_PARTS = 10_000;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadEngine uploadEngine;
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final StorageQuota storageQuota;
+    private final Duration orphanedPartsAge;
+
+    public ResumableUploadService(
+            UploadSessionRepository uploadSessionRepository,
+            UploadEngine uploadEngine,
+            FileRepository fileRepository,
+            FileService fileService,
+            StorageQuota storageQuota,
+            @Value("${storage.upload.orphaned-parts-age:P1D}") Duration orphanedPartsAge
+    ) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.uploadEngine = uploadEngine;
+        this.fileRepository = fileRepository;
+        this.fileService = fileService;
+        this.storageQuota = storageQuota;
+        this.orphanedPartsAge = orphanedPartsAge;
+    }
+
+    public UploadStatus initiate(FilePath target, String contentType) {
+        if (target.isDir()) {
+            target.throwIsNotFile();
+        }
+        var session = new UploadSession(UUID.randomUUID().toString(), target.username(), target.path(), contentType);
+        uploadSessionRepository.save(session);
+        return new UploadStatus(session.id(), session.path(), List.of());
+    }
+
+    public UploadPart uploadPart(String username, String uploadId, int number, InputStream stream, long size)
+            throws FileDoesNotExistsException, InternalServerException, QuotaExceededException {
+        var session = find(username, uploadId);
+        if (number < 1 || number > MAX_PARTS) {
+            throw new IllegalArgumentException("Part number must be between 1 and " + MAX_PARTS);
+        }
+        // The session's other staged parts count too, a part is refused once the finished file couldn't fit
+        long staged = uploadSessionRepository.parts(session.id()).stream()
+                .filter(part -> part.number() != number)
+                .mapToLong(UploadPart::size)
+                .sum();
+        try (var reservation = storageQuota.reserve(session.target(), staged + Math.max(0, size))) {
+            // Re-sending a part overwrites the staged object, so retries are safe
+            var stored = uploadEngine.uploadStaged(stream, size, partKey(session.id(), number));
+            var part = new UploadPart(number, stored);
+            uploadSessionRepository.savePart(session.id(), part);
+            return part;
+        }
+    }
+
+    public UploadStatus status(String username, String uploadId) throws FileDoesNotExistsException {
+        var session = find(username, uploadId);
+        return new UploadStatus(session.id(), session.path(), uploadSessionRepository.parts(session.id()));
+    }
+
+    public FileInfo complete(String username, String uploadId)
+            throws FileDoesNotExistsException, InternalServerException, QuotaExceededException {
+        var session = find(username, uploadId);
+        var parts = uploadSessionRepository.parts(session.id());
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("Upload " + uploadId + " has no parts");
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            var part = parts.get(i);
+            if (part.number() != i + 1) {
+                throw new IllegalArgumentException("Part " + (i + 1) + " is missing");
+            }
+            if (i < parts.size() - 1 && part.size() < ObjectWriteArgs.MIN_MULTIPART_SIZE) {
+                throw new IllegalArgumentException("Part " + part.number() + " is smaller than the 5MiB minimum");
+            }
+        }
+
+        var keys = parts.stream().map(part -> partKey(session.id(), part.number())).toList();
+        long size = parts.stream().mapToLong(UploadPart::size).sum();
+        var result = fileService.uploadComposed(keys, size, session.contentType(), session.target());
+
+        uploadSessionRepository.delete(session.id());
+        fileRepository.removeKeys(keys);
+        return result;
+    }
+
+    public void abort(String username, String uploadId) throws FileDoesNotExistsException {
+        var session = find(username, uploadId);
+        uploadSessionRepository.delete(session.id());
+        fileRepository.removeKeys(fileRepository.listKeys(STAGING_PREFIX + session.id() + "/").toList());
+    }
+
+    // Staged parts of sessions that expired in Redis are never completed. Parts of buffered uploads
+    // are removed by the request that wrote them, old ones were left behind by a crashed instance
+    @Scheduled(fixedDelayString = "${storage.upload.sweep-interval:PT1H}")
+    public void removeAbandonedParts() {
+        var staged = fileRepository.listKeys(STAGING_PREFIX)
+                .collect(Collectors.groupingBy(ResumableUploadService::uploadIdOf));
+        staged.forEach((uploadId, keys) -> {
+            if (uploadSessionRepository.find(uploadId).isEmpty()) {
+                log.info("Removing {} abandoned parts of upload {}", keys.size(), uploadId);
+                fileRepository.removeKeys(keys);
+            }
+        });
+
+        var orphaned = fileRepository.listKeysModifiedBefore(
+                UploadEngine.PART_PREFIX, Instant.now().minus(orphanedPartsAge)).toList();
+        if (!orphaned.isEmpty()) {
+            log.info("Removing {} orphaned parts of buffered uploads", orphaned.size());
+            fileRepository.removeKeys(orphaned);
+        }
+    }
+
+    private UploadSession find(String username, String uploadId) throws FileDoesNotExistsException {
+        var session = uploadSessionRepository.find(uploadId)
+                .filter(candidate -> Objects.equals(candidate.username(), username));
+        if (session.isEmpty()) {
+            throw new FileDoesNotExistsException("Upload does not exist: " + uploadId);
+        }
+        return session.get();
+    }
+
+    static String partKey(String uploadId, int number) {
+        return STAGING_PREFIX + uploadId + "/" + String.format("%05d", number);
+    }
+
+    private static String uploadIdOf(String key) {
+        var rest = key.substring(STAGING_PREFIX.length());
+        return rest.substring(0, rest.indexOf('/') < 0 ? rest.length() : rest.indexOf('/'));
+    }
+}
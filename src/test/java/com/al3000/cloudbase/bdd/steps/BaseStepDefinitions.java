@@ -17,6 +17,7 @@ import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 
 abstract class BaseStepDefinitions {
 
@@ -54,7 +55,12 @@ abstract class BaseStepDefinitions {
         if (context.getAuthenticatedUser() != null) {
             requestBuilder.with(user(context.getAuthenticatedUser()));
         }
-        return mockMvc.perform(requestBuilder).andReturn();
+        var result = mockMvc.perform(requestBuilder).andReturn();
+        // Streaming bodies are written asynchronously, dispatch again to collect them
+        if (result.getRequest().isAsyncStarted()) {
+            return mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result;
     }
 
     protected MockHttpServletRequestBuilder withQueryParameters(
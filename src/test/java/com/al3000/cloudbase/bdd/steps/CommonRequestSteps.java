@@ -39,6 +39,22 @@ public class CommonRequestSteps extends BaseStepDefinitions {
         context.setLastResult(perform(withQueryParameters(requestBuilder, dataTable)));
     }
 
+    @When("the client GETs {string} for path {string} with header {string} set to {string}")
+    public void theClientGetsForPathWithHeader(String endpoint, String path, String headerName, String headerValue) throws Exception {
+        MockHttpServletRequestBuilder requestBuilder = get(context.getApiBasePath() + endpoint)
+                .queryParam("path", path)
+                .header(headerName, headerValue);
+        context.setLastResult(perform(requestBuilder));
+    }
+
+    @When("the client GETs {string} with query parameters and header {string} set to {string}:")
+    public void theClientGetsWithQueryParametersAndHeader(String endpoint, String headerName, String headerValue,
+                                                          DataTable dataTable) throws Exception {
+        MockHttpServletRequestBuilder requestBuilder = get(context.getApiBasePath() + endpoint)
+                .header(headerName, headerValue);
+        context.setLastResult(perform(withQueryParameters(requestBuilder, dataTable)));
+    }
+
     @When("the client POSTs to {string} with query parameters:")
     public void theClientPostsToWithQueryParameters(String endpoint, DataTable dataTable) throws Exception {
         MockHttpServletRequestBuilder requestBuilder = post(context.getApiBasePath() + endpoint)
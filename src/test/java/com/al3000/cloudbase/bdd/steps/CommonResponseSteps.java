@@ -68,4 +68,11 @@ public class CommonResponseSteps extends BaseStepDefinitions {
         assertThat(context.getLastResult()).isNotNull();
         assertThat(context.getLastResult().getResponse().getContentAsString(StandardCharsets.UTF_8)).isEqualTo(expectedBody);
     }
+
+    @And("the response body should have {int} lines")
+    public void theResponseBodyShouldHaveLines(int expectedLines) throws Exception {
+        assertThat(context.getLastResult()).isNotNull();
+        String content = context.getLastResult().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(content.lines()).hasSize(expectedLines);
+    }
 }
@@ -1,8 +1,13 @@
 package com.al3000.cloudbase.bdd.steps;
 
+import com.al3000.cloudbase.dto.FolderPage;
+import com.al3000.cloudbase.dto.FolderStats;
+import com.al3000.cloudbase.dto.ObjectMetadata;
+import com.al3000.cloudbase.dto.StoredObject;
 import com.al3000.cloudbase.exception.DestinationAlreadyExistsException;
 import com.al3000.cloudbase.exception.FileDoesNotExistsException;
 import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
 import com.al3000.cloudbase.service.FileService;
 import io.cucumber.datatable.DataTable;
 import io.cucumber.java.Before;
@@ -11,18 +16,24 @@ import io.cucumber.java.en.Given;
 
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Objects;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class FileServiceSteps extends BaseStepDefinitions {
 
+    static final String DOWNLOAD_ETAG = "abc123";
+    static final Instant DOWNLOAD_LAST_MODIFIED = Instant.parse("2024-01-01T00:00:00Z");
+
     @Autowired
     protected FileService fileService;
 
@@ -37,6 +48,12 @@ public class FileServiceSteps extends BaseStepDefinitions {
                 .thenReturn(toFileInfoList(dataTable).stream());
     }
 
+    @Given("the file service will return a folder page with cursor {string}:")
+    public void theFileServiceWillReturnAFolderPageWithCursor(String cursor, DataTable dataTable) {
+        when(fileService.getFolderPage(any(), any(), anyInt()))
+                .thenReturn(new FolderPage(toFileInfoList(dataTable), cursor.isEmpty() ? null : cursor));
+    }
+
     @Given("the file service will create the folder result:")
     public void theFileServiceWillCreateTheFolderResult(DataTable dataTable) throws Exception {
         when(fileService.createFolder(any()))
@@ -59,10 +76,22 @@ public class FileServiceSteps extends BaseStepDefinitions {
                 .when(fileService).uploadFile(any(), any());
     }
 
+    @Given("the file service will reject uploads with quota exceeded {string}")
+    public void theFileServiceWillRejectUploadsWithQuotaExceeded(String message) throws Exception {
+        doThrow(new QuotaExceededException(message))
+                .when(fileService).uploadFile(any(), any());
+    }
+
+    @Given("the file service will report usage of {long} bytes in {long} files for folder {string}")
+    public void theFileServiceWillReportUsage(long size, long files, String path) {
+        when(fileService.getFolderUsage(argThat(filePath -> filePath != null && Objects.equals(filePath.path(), path))))
+                .thenReturn(new FolderStats(path, size, files));
+    }
+
     @Given("the file service will return the following search results:")
     public void theFileServiceWillReturnTheFollowingSearchResults(DataTable dataTable) {
-        when(fileService.findFiles(any(), any()))
-                .thenReturn(toFileInfoList(dataTable).stream());
+        when(fileService.findFiles(any(), any(), any(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> toFileInfoList(dataTable).stream());
     }
 
     @Given("the file service will move the resource result:")
@@ -84,13 +113,30 @@ public class FileServiceSteps extends BaseStepDefinitions {
 
     @Given("the file service will return downloadable content {string}")
     public void theFileServiceWillReturnDownloadableContent(String body) throws Exception {
-        when(fileService.downloadObject(any()))
-                .thenReturn(new InputStreamResource(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+        theFileServiceWillReturnDownloadableContentStoredAs(body, "application/octet-stream");
+    }
+
+    @Given("the file service will return downloadable content {string} stored as {string}")
+    public void theFileServiceWillReturnDownloadableContentStoredAs(String body, String contentType) throws Exception {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        var metadata = new ObjectMetadata(bytes.length, DOWNLOAD_ETAG, DOWNLOAD_LAST_MODIFIED, contentType);
+        when(fileService.describeFile(any()))
+                .thenReturn(metadata);
+        when(fileService.openFile(any()))
+                .thenAnswer(invocation -> new StoredObject(metadata, new ByteArrayInputStream(bytes)));
+        when(fileService.downloadFile(any()))
+                .thenReturn(outputStream -> outputStream.write(bytes));
+        when(fileService.downloadRange(any(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> {
+                    int offset = Math.toIntExact(invocation.<Long>getArgument(1));
+                    int length = Math.toIntExact(invocation.<Long>getArgument(2));
+                    return (StreamingResponseBody) outputStream -> outputStream.write(bytes, offset, length);
+                });
     }
 
     @Given("the file service will fail download with missing file {string}")
     public void theFileServiceWillFailDownloadWithMissingFile(String message) throws Exception {
-        when(fileService.downloadObject(any()))
+        when(fileService.openFile(any()))
                 .thenThrow(new FileDoesNotExistsException(message));
     }
 
@@ -127,7 +173,10 @@ public class FileServiceSteps extends BaseStepDefinitions {
     public void theFileServiceShouldHaveBeenAskedToSearchForForUser(String query, String username) {
         verify(fileService).findFiles(
                 argThat(filePath -> Objects.equals(filePath.username(), username) && Objects.equals(filePath.path(), "")),
-                eq(query)
+                eq(query),
+                any(),
+                anyLong(),
+                anyLong()
         );
     }
 
@@ -139,9 +188,14 @@ public class FileServiceSteps extends BaseStepDefinitions {
         );
     }
 
+    @And("the file service should not have opened any file")
+    public void theFileServiceShouldNotHaveOpenedAnyFile() throws Exception {
+        verify(fileService, never()).openFile(any());
+    }
+
     @And("the file service should have been asked to download path {string} for user {string}")
     public void theFileServiceShouldHaveBeenAskedToDownloadPathForUser(String path, String username) throws Exception {
-        verify(fileService).downloadObject(argThat(filePath ->
+        verify(fileService).openFile(argThat(filePath ->
                 Objects.equals(filePath.username(), username) &&
                         Objects.equals(filePath.path(), path)));
     }
@@ -0,0 +1,121 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.model.FileMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the hand-written queries against H2 in PostgreSQL mode from the test profile
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class FileMetadataRepositoryTest {
+
+    @Autowired
+    FileMetadataRepository fileMetadataRepository;
+
+    @Test
+    void findByOwnerAndParentPathAndNameAndDirectory_separatesFilesFromFoldersOfTheSameName() {
+        // Arrange
+        fileMetadataRepository.saveAll(List.of(
+                new FileMetadata("alice", "a/", "b", 3L, false),
+                new FileMetadata("alice", "a/", "b", 0L, true)));
+
+        // Act
+        var file = fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory("alice", "a/", "b", false);
+        var folder = fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory("alice", "a/", "b", true);
+
+        // Assert
+        assertThat(file).get().extracting(FileMetadata::getSize).isEqualTo(3L);
+        assertThat(folder).get().extracting(FileMetadata::getDirectory).isEqualTo(true);
+    }
+
+    @Test
+    void findByOwnerAndParentPath_returnsDirectChildrenOnly() {
+        // Arrange
+        fileMetadataRepository.saveAll(List.of(
+                new FileMetadata("alice", "a/", "x.txt", 1L, false),
+                new FileMetadata("alice", "a/", "b", 0L, true),
+                new FileMetadata("alice", "a/b/", "y.txt", 1L, false),
+                new FileMetadata("bob", "a/", "z.txt", 1L, false)));
+
+        // Act
+        var children = fileMetadataRepository.findByOwnerAndParentPath("alice", "a/");
+
+        // Assert
+        assertThat(children).extracting(FileMetadata::getName).containsExactlyInAnyOrder("x.txt", "b");
+    }
+
+    @Test
+    void findFilesByNameLike_matchesFilesBelowTheFolderByLiteralFragment() {
+        // Arrange
+        fileMetadataRepository.saveAll(List.of(
+                new FileMetadata("alice", "a/", "report_1.txt", 1L, false),
+                new FileMetadata("alice", "a/b/", "old report_2.txt", 1L, false),
+                new FileMetadata("alice", "a/", "reportX1.txt", 1L, false),
+                new FileMetadata("alice", "a/", "report_dir", 0L, true),
+                new FileMetadata("alice", "c/", "report_3.txt", 1L, false)));
+
+        // Act
+        var found = fileMetadataRepository.findFilesByNameLike("alice", "a/%", "%report\\_%");
+
+        // Assert
+        assertThat(found).extracting(FileMetadata::getName)
+                .containsExactlyInAnyOrder("report_1.txt", "old report_2.txt");
+    }
+
+    @Test
+    void deleteAllByOwner_keepsOtherOwners() {
+        // Arrange
+        fileMetadataRepository.saveAll(List.of(
+                new FileMetadata("alice", "", "x.txt", 1L, false),
+                new FileMetadata("bob", "", "y.txt", 2L, false)));
+
+        // Act
+        fileMetadataRepository.deleteAllByOwner("alice");
+
+        // Assert
+        assertThat(fileMetadataRepository.findByOwner("alice")).isEmpty();
+        assertThat(fileMetadataRepository.findByOwner("bob")).hasSize(1);
+    }
+
+    @Test
+    void deleteByParentPathLike_escapedWildcards_matchOnlyTheLiteralPrefix() {
+        // Arrange
+        fileMetadataRepository.saveAll(List.of(
+                new FileMetadata("alice", "a_b/", "x.txt", 1L, false),
+                new FileMetadata("alice", "a_b/c/", "y.txt", 1L, false),
+                new FileMetadata("alice", "axb/", "z.txt", 1L, false),
+                new FileMetadata("bob", "a_b/", "w.txt", 1L, false)));
+
+        // Act
+        fileMetadataRepository.deleteByParentPathLike("alice", "a\\_b/%");
+
+        // Assert
+        assertThat(fileMetadataRepository.findByOwner("alice"))
+                .extracting(FileMetadata::getName)
+                .containsExactly("z.txt");
+        assertThat(fileMetadataRepository.findByOwner("bob")).hasSize(1);
+    }
+
+    @Test
+    void rebaseParentPath_movesTheSubtreeOnly() {
+        // Arrange
+        fileMetadataRepository.saveAll(List.of(
+                new FileMetadata("alice", "a/", "x.txt", 1L, false),
+                new FileMetadata("alice", "a/b/", "y.txt", 1L, false),
+                new FileMetadata("alice", "ab/", "z.txt", 1L, false)));
+
+        // Act
+        fileMetadataRepository.rebaseParentPath("alice", "a/%", 2, "c/d/");
+
+        // Assert
+        assertThat(fileMetadataRepository.findByOwner("alice"))
+                .extracting(metadata -> metadata.getParentPath() + metadata.getName())
+                .containsExactlyInAnyOrder("c/d/x.txt", "c/d/b/y.txt", "ab/z.txt");
+    }
+}
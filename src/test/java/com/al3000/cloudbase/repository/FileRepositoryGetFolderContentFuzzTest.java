@@ -15,6 +15,7 @@ import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -31,7 +32,8 @@ class FileRepositoryGetFolderContentFuzzTest {
     @FuzzTest(maxDuration = "240s")
     void getFolderContentProducesConsistentEntries(FuzzedDataProvider data) {
         MinioClient client = Mockito.mock(MinioClient.class);
-        FileRepository repository = new FileRepository(client, "bucket");
+        // Single listing, the sharded path issues one request per sub-prefix
+        FileRepository repository = new FileRepository(client, "bucket", Executors.newVirtualThreadPerTaskExecutor(), 1, 1);
 
 
         String folderPathValue = sanitizePathSegment(data.consumeString(40), true);
@@ -18,6 +18,7 @@ import org.testcontainers.utility.DockerImageName;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -63,7 +64,7 @@ class FileRepositoryMinioIntegrationTest {
         } catch (Exception ignored) {
             // может уже быть создан
         }
-        fileRepository = new FileRepository(minioClient, BUCKET);
+        fileRepository = new FileRepository(minioClient, BUCKET, Executors.newVirtualThreadPerTaskExecutor(), 4, 2);
     }
 
     @Test
@@ -94,7 +95,7 @@ class FileRepositoryMinioIntegrationTest {
     }
 
     @Test
-    void uploadFile_and_downloadFile() throws Exception {
+    void uploadFile_and_openFile() throws Exception {
         // Arrange
         var multipart = new MockMultipartFile("file", "hello.txt", "text/plain", payload);
 
@@ -106,23 +107,23 @@ class FileRepositoryMinioIntegrationTest {
         FilePath endPath = new FilePath(username, "a/hello.txt");
 
         //Act
-        try (InputStream is = fileRepository.downloadFile(endPath);
+        try (var object = fileRepository.openFile(endPath);
              ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
 
             //Assert
-            is.transferTo(baos);
+            object.stream().transferTo(baos);
             assertThat(baos.toByteArray()).isEqualTo(payload);
             assertThat(fileRepository.fileExist(endPath)).isTrue();
         }
     }
 
     @Test
-    void downloadFile_whenFileDoesNotExist_throwsFileDoesNotExist() {
+    void openFile_whenFileDoesNotExist_throwsFileDoesNotExist() {
         // Arrange
         FilePath endPath = new FilePath(username, "a/hik.txt");
 
         //Act & Assert
-        assertThatThrownBy(() -> fileRepository.downloadFile(endPath)).isInstanceOf(InternalServerException.class);
+        assertThatThrownBy(() -> fileRepository.openFile(endPath)).isInstanceOf(InternalServerException.class);
 
     }
 
@@ -2,12 +2,15 @@ package com.al3000.cloudbase.repository;
 
 import com.al3000.cloudbase.dto.FileFullInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.ObjectMetadata;
 import com.al3000.cloudbase.exception.InternalServerException;
+import io.minio.GetObjectResponse;
 import io.minio.MinioClient;
 import io.minio.Result;
 import io.minio.errors.InternalException;
 import io.minio.errors.ServerException;
 import io.minio.messages.Item;
+import okhttp3.Headers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,9 +22,16 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -29,6 +39,8 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.hibernate.internal.util.collections.CollectionHelper.listOf;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,12 +50,14 @@ public class FileRepositoryTest {
 
     FileRepository fileRepository;
 
+    ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
     static String username = "alice";
 
     @BeforeEach
     void setUp()
     {
-        fileRepository = new FileRepository(client, "bucket");
+        fileRepository = new FileRepository(client, "bucket", executor, 1, 1);
     }
     static Result<Item> makeItem(String name, long length) {
         var mockItem = mock(Item.class);
@@ -51,6 +65,11 @@ public class FileRepositoryTest {
         when(mockItem.size()).thenReturn(length);
         return new Result<>(mockItem);
     }
+    static Result<Item> makeKey(String name) {
+        var mockItem = mock(Item.class);
+        when(mockItem.objectName()).thenReturn(new FilePath(username,name).getFullPath());
+        return new Result<>(mockItem);
+    }
     static Result<Item> makeDefectItem() throws Exception {
         Result<Item>  mockItem = mock(Result.class);
         when(mockItem.get()).thenThrow(new ServerException("boom", 500, "boom"));
@@ -100,6 +119,136 @@ public class FileRepositoryTest {
         assertThat(result.toList()).isEqualTo(expected);
     }
 
+    static Result<Item> makePrefix(String name) {
+        var mockItem = mock(Item.class);
+        when(mockItem.objectName()).thenReturn(new FilePath(username, name).getFullPath());
+        when(mockItem.isDir()).thenReturn(true);
+        return new Result<>(mockItem);
+    }
+
+    // docs/ holds files of its own and two sub-prefixes, each listed as a separate shard.
+    // Like storage, the delimited page lists every file before the prefixes, whatever their keys
+    private FileRepository shardedRepository(FilePath folder) throws Exception {
+        var topLevel = listOf(makeItem("docs/", 0), makeItem("docs/a.txt", 1), makeItem("docs/b.txt", 2),
+                makeItem("docs/d.txt", 6), makePrefix("docs/b/"), makePrefix("docs/c/"), makeDefectItem());
+        var shardB = listOf(makeItem("docs/b/", 0), makeItem("docs/b/x.txt", 3), makeItem("docs/b/y/z.txt", 4));
+        var shardC = listOf(makeItem("docs/c/w.txt", 5));
+        when(client.listObjects(argThat(x -> x != null && !x.recursive() && Objects.equals(x.prefix(), folder.getFullPath()))))
+                .thenReturn(topLevel);
+        when(client.listObjects(argThat(x -> x != null && x.recursive() && Objects.equals(x.prefix(), "user-alice/docs/b/"))))
+                .thenReturn(shardB);
+        when(client.listObjects(argThat(x -> x != null && x.recursive() && Objects.equals(x.prefix(), "user-alice/docs/c/"))))
+                .thenReturn(shardC);
+        return new FileRepository(client, "bucket", executor, 4, 2);
+    }
+
+    static List<FileFullInfo> docsTree() {
+        return listOf(
+                makeDirectory("", "docs"),
+                makeFile("docs/", "a.txt", 1),
+                makeFile("docs/", "b.txt", 2),
+                makeDirectory("docs/", "b"),
+                makeFile("docs/b/", "x.txt", 3),
+                makeFile("docs/b/y/", "z.txt", 4),
+                makeFile("docs/c/", "w.txt", 5),
+                makeFile("docs/", "d.txt", 6)
+        );
+    }
+
+    @Test
+    void getFolderContent_recursiveSharded_keepsKeyOrder() throws Exception {
+        // Arrange
+        FilePath folder = new FilePath(username, "docs/");
+        var repository = shardedRepository(folder);
+
+        // Act
+        var result = repository.getFolderContent(folder, true).toList();
+
+        // Assert
+        assertThat(result).isEqualTo(docsTree());
+    }
+
+    @Test
+    void getFolderContent_recursiveSharded_readsTopLevelLazily() {
+        // Arrange
+        FilePath folder = new FilePath(username, "flat/");
+        var read = new AtomicInteger();
+        Iterable<Result<Item>> endless = () -> Stream.iterate(0, i -> i + 1)
+                .peek(i -> read.incrementAndGet())
+                .map(i -> makeItem("flat/" + String.format("%07d", i) + ".txt", 1))
+                .iterator();
+        when(client.listObjects(argThat(x -> x != null && !x.recursive() && x.maxKeys() == ShardedListing.PAGE_SIZE)))
+                .thenReturn(endless);
+        var repository = new FileRepository(client, "bucket", executor, 4, 2);
+
+        // Act
+        var result = repository.getFolderContent(folder, true).limit(10).toList();
+
+        // Assert
+        assertThat(result.get(9)).isEqualTo(makeFile("flat/", "0000009.txt", 1));
+        // Only the rest of the page is read to rule out sub-prefixes sorting before the files
+        assertThat(read.get()).isLessThanOrEqualTo(ShardedListing.PAGE_SIZE + 10);
+    }
+
+    @Test
+    void getFolderContentUnordered_returnsEveryEntryOnce() throws Exception {
+        // Arrange
+        FilePath folder = new FilePath(username, "docs/");
+        var repository = shardedRepository(folder);
+
+        // Act
+        var result = repository.getFolderContentUnordered(folder).toList();
+
+        // Assert
+        assertThat(result.size()).isEqualTo(docsTree().size());
+        assertThat(Set.copyOf(result)).isEqualTo(Set.copyOf(docsTree()));
+    }
+
+    @Test
+    void getFolderContent_recursiveSharded_whenShardListingFails_rethrows() throws Exception {
+        // Arrange
+        FilePath folder = new FilePath(username, "docs/");
+        var topLevel = listOf(makePrefix("docs/b/"));
+        when(client.listObjects(argThat(x -> x != null && !x.recursive())))
+                .thenReturn(topLevel);
+        when(client.listObjects(argThat(x -> x != null && x.recursive())))
+                .thenThrow(new IllegalStateException("boom"));
+        var repository = new FileRepository(client, "bucket", executor, 4, 2);
+
+        // Act & Assert
+        assertThatThrownBy(() -> repository.getFolderContent(folder, true).toList())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+    }
+
+    @Test
+    void existingKeys_returnsOnlyListedCandidates() throws Exception {
+        // Arrange
+        FilePath target = new FilePath(username, "b/");
+        FilePath present = new FilePath(username, "b/x.txt");
+        FilePath missing = new FilePath(username, "b/c/y.txt");
+
+        when(client.listObjects(argThat(x -> Objects.equals(x.prefix(), target.getFullPath()))))
+                .thenReturn(listOf(makeKey("b/"), makeKey("b/x.txt"), makeKey("b/z.txt")));
+
+        // Act
+        var result = fileRepository.existingKeys(target, listOf(present, missing));
+
+        // Assert
+        assertThat(result).isEqualTo(Set.of(present));
+    }
+
+    @Test
+    void existingKeys_whenListingFails_throwsInternalServerException() throws Exception {
+        // Arrange
+        FilePath target = new FilePath(username, "b/");
+        when(client.listObjects(ArgumentMatchers.any())).thenReturn(listOf(makeDefectItem()));
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileRepository.existingKeys(target, listOf(new FilePath(username, "b/x.txt"))))
+                .isInstanceOf(InternalServerException.class);
+    }
+
     @Test
     void uploadFile_throwsException_ExceptionRethrown() throws Exception {
 
@@ -116,4 +265,43 @@ public class FileRepositoryTest {
 
     }
 
+    @Test
+    void uploadStream_withUnknownSize_usesConfiguredPartSize() throws Exception {
+        // Arrange
+        FilePath path = new FilePath(username, "a/big.bin");
+        long partSize = 8L * 1024 * 1024;
+
+        // Act
+        fileRepository.uploadStream(InputStream.nullInputStream(), -1L, partSize, null, path);
+
+        // Assert
+        verify(client).putObject(argThat(args ->
+                args.object().equals(path.getFullPath())
+                        && args.objectSize() == -1L
+                        && args.partSize() == partSize));
+    }
+
+    @Test
+    void openFile_readsMetadataFromGetResponseHeaders() throws Exception {
+        // Arrange
+        FilePath path = new FilePath(username, "a/movie.mp4");
+        var headers = Headers.of(
+                "Content-Length", "5",
+                "Content-Type", "video/mp4",
+                "ETag", "\"abc123\"",
+                "Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT");
+        var body = new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8));
+        when(client.getObject(argThat(args -> args.object().equals(path.getFullPath()))))
+                .thenReturn(new GetObjectResponse(headers, "bucket", "", path.getFullPath(), body));
+
+        // Act
+        var object = fileRepository.openFile(path);
+
+        // Assert
+        assertThat(object.metadata()).isEqualTo(new ObjectMetadata(
+                5, "abc123", Instant.parse("2024-01-01T00:00:00Z"), "video/mp4"));
+        assertThat(object.stream().readAllBytes()).isEqualTo("hello".getBytes(StandardCharsets.UTF_8));
+        // Metadata comes from the same request, no stat is issued
+        verify(client, never()).statObject(ArgumentMatchers.any());
+    }
 }
@@ -0,0 +1,37 @@
+package com.al3000.cloudbase.repository;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ObjectKeyParserTest {
+
+    private static final String USERNAME = "alice";
+    private static final String PREFIX = "user-alice/";
+
+    static Stream<Arguments> keys() {
+        return Stream.of(
+                Arguments.of("user-alice/a.txt", new FileFullInfo(USERNAME, "", "a.txt", 7L, false)),
+                Arguments.of("user-alice/a/b/c.txt", new FileFullInfo(USERNAME, "a/b/", "c.txt", 7L, false)),
+                Arguments.of("user-alice/a/", new FileFullInfo(USERNAME, "", "a", 7L, true)),
+                Arguments.of("user-alice/a/b/", new FileFullInfo(USERNAME, "a/", "b", 7L, true)),
+                Arguments.of("user-alice/", new FileFullInfo(USERNAME, "", "", 7L, true)),
+                Arguments.of("user-alice/фото/отпуск.jpg", new FileFullInfo(USERNAME, "фото/", "отпуск.jpg", 7L, false))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("keys")
+    void parse_splitsKeyIntoPathAndName(String objectName, FileFullInfo expected) {
+        // Act
+        var result = ObjectKeyParser.parse(USERNAME, PREFIX.length(), objectName, 7L);
+
+        // Assert
+        assertThat(result).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,40 @@
+package com.al3000.cloudbase.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchivePolicyTest {
+
+    private final ArchivePolicy archivePolicy = new ArchivePolicy(
+            List.of("jpg", " MP4 "),
+            List.of("video/", "image/png"),
+            6
+    );
+
+    @Test
+    void levelFor_compressedExtension_isZeroIgnoringCase() {
+        // Act & Assert
+        assertThat(archivePolicy.levelFor("photos/IMG_001.JPG", null)).isZero();
+        assertThat(archivePolicy.levelFor("clip.mp4", "application/octet-stream")).isZero();
+    }
+
+    @Test
+    void levelFor_compressedContentType_isZero() {
+        // Act & Assert
+        assertThat(archivePolicy.levelFor("recording", "video/webm")).isZero();
+        assertThat(archivePolicy.levelFor("image", "image/png")).isZero();
+        assertThat(archivePolicy.levelFor("image", "image/png; q=1")).isZero();
+    }
+
+    @Test
+    void levelFor_textLikeContent_usesConfiguredLevel() {
+        // Act & Assert
+        assertThat(archivePolicy.levelFor("notes.txt", "text/plain")).isEqualTo(6);
+        assertThat(archivePolicy.levelFor("Makefile", null)).isEqualTo(6);
+        assertThat(archivePolicy.levelFor("image", "image/pngx")).isEqualTo(6);
+        assertThat(archivePolicy.levelFor("archive.jpg.txt", null)).isEqualTo(6);
+    }
+}
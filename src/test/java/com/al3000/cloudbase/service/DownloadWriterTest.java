@@ -0,0 +1,82 @@
+package com.al3000.cloudbase.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DownloadWriterTest {
+
+    private final DownloadWriter downloadWriter = new DownloadWriter(DataSize.ofKilobytes(8), 1);
+
+    @Test
+    void transfer_copiesWholeStreamInBufferSizedWrites() throws Exception {
+        // Arrange
+        byte[] payload = new byte[3 * downloadWriter.bufferSize() + 123];
+        new Random(7).nextBytes(payload);
+        var out = new RecordingOutputStream();
+
+        // Act
+        long copied = downloadWriter.transfer(new ByteArrayInputStream(payload), out);
+
+        // Assert
+        assertThat(copied).isEqualTo(payload.length);
+        assertThat(out.toByteArray()).isEqualTo(payload);
+        assertThat(out.writes).containsExactly(
+                downloadWriter.bufferSize(), downloadWriter.bufferSize(), downloadWriter.bufferSize(), 123);
+    }
+
+    @Test
+    void transfer_emptyStream_writesNothing() throws Exception {
+        // Arrange
+        var out = new RecordingOutputStream();
+
+        // Act
+        long copied = downloadWriter.transfer(InputStream.nullInputStream(), out);
+
+        // Assert
+        assertThat(copied).isZero();
+        assertThat(out.writes).isEmpty();
+    }
+
+    @Test
+    void transfer_afterFailedCopy_stillWorks() throws Exception {
+        // Arrange
+        var failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        byte[] payload = "hello".getBytes();
+        var out = new ByteArrayOutputStream();
+
+        // Act
+        assertThatThrownBy(() -> downloadWriter.transfer(failing, OutputStream.nullOutputStream()))
+                .isInstanceOf(IOException.class);
+        downloadWriter.transfer(new ByteArrayInputStream(payload), out);
+
+        // Assert
+        assertThat(out.toByteArray()).isEqualTo(payload);
+    }
+
+    private static class RecordingOutputStream extends ByteArrayOutputStream {
+        private final List<Integer> writes = new ArrayList<>();
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes.add(len);
+            super.write(b, off, len);
+        }
+    }
+}
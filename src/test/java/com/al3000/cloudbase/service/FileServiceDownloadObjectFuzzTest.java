@@ -2,18 +2,27 @@ package com.al3000.cloudbase.service;
 
 import com.al3000.cloudbase.dto.FileFullInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.ObjectMetadata;
+import com.al3000.cloudbase.dto.StoredObject;
 import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.service.index.MetadataIndex;
+import com.al3000.cloudbase.service.search.MultiPatternSearch;
 import com.al3000.cloudbase.service.search.StringSearchAlgorithm;
 import com.code_intelligence.jazzer.api.FuzzedDataProvider;
 import com.code_intelligence.jazzer.junit.FuzzTest;
 import org.junit.jupiter.api.BeforeEach;
 import org.mockito.Mockito;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Executors;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -32,7 +41,21 @@ class FileServiceDownloadObjectFuzzTest {
     void setUp() {
         fileRepository = Mockito.mock(FileRepository.class);
         StringSearchAlgorithm searchAlgorithm = Mockito.mock(StringSearchAlgorithm.class);
-        fileService = new FileService(fileRepository, searchAlgorithm);
+        MetadataIndex metadataIndex = Mockito.mock(MetadataIndex.class);
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var folderMarkerManager = new FolderMarkerManager(fileRepository, 100, 100);
+        fileService = new FileService(fileRepository, searchAlgorithm,
+                new MultiPatternSearch(),
+                new ObjectPrefetcher(fileRepository, executor, 4),
+                new MoveEngine(fileRepository, executor, 4),
+                metadataIndex,
+                new UploadEngine(fileRepository, executor, new DirectBufferPool(DataSize.ofMegabytes(5), 2),
+                        folderMarkerManager, 2, 2),
+                folderMarkerManager,
+                new DownloadWriter(DataSize.ofKilobytes(8), 2),
+                new ArchivePolicy(List.of("jpg"), List.of("video/"), 6),
+                new ParallelZipWriter(DataSize.ofKilobytes(4), 2),
+                Mockito.mock(StorageQuota.class));
     }
 
     @FuzzTest(maxDuration = "30s")
@@ -42,13 +65,13 @@ class FileServiceDownloadObjectFuzzTest {
 
         if (!directoryRequest) {
             byte[] payload = data.consumeBytes(data.remainingBytes());
-            FileFullInfo info = fileInfoFromPath(requestedPath, payload.length);
-            when(fileRepository.getFileInformation(requestedPath)).thenReturn(info);
-            when(fileRepository.downloadFile(requestedPath)).thenReturn(new ByteArrayInputStream(payload));
+            when(fileRepository.openFile(requestedPath)).thenReturn(new StoredObject(
+                    new ObjectMetadata(payload.length, "etag", Instant.EPOCH, "application/octet-stream"),
+                    new ByteArrayInputStream(payload)));
 
-            InputStreamResource resource = fileService.downloadObject(requestedPath);
+            StreamingResponseBody body = fileService.downloadObject(requestedPath);
 
-            assertThat(resource.getInputStream().readAllBytes()).isEqualTo(payload);
+            assertThat(writeAll(body)).isEqualTo(payload);
             return;
         }
 
@@ -72,16 +95,18 @@ class FileServiceDownloadObjectFuzzTest {
 
             if (childInfo.isFile()) {
                 byte[] payload = data.consumeBytes(data.consumeInt(0, Math.min(64, data.remainingBytes())));
-                when(fileRepository.downloadFile(childPath)).thenReturn(new ByteArrayInputStream(payload));
+                when(fileRepository.openFile(childPath)).thenReturn(new StoredObject(
+                        new ObjectMetadata(payload.length, "etag", Instant.EPOCH, "application/octet-stream"),
+                        new ByteArrayInputStream(payload)));
             }
         }
 
         when(fileRepository.getFolderContent(requestedPath, true)).thenReturn(children.stream());
 
-        InputStreamResource resource = fileService.downloadObject(requestedPath);
+        StreamingResponseBody body = fileService.downloadObject(requestedPath);
         List<String> entryNames = new ArrayList<>();
 
-        try (ZipInputStream zipInputStream = new ZipInputStream(resource.getInputStream())) {
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(writeAll(body)))) {
             ZipEntry entry;
             while ((entry = zipInputStream.getNextEntry()) != null) {
                 entryNames.add(entry.getName());
@@ -96,6 +121,12 @@ class FileServiceDownloadObjectFuzzTest {
         assertThat(entryNames).hasSize((int) expectedEntries);
     }
 
+    private static byte[] writeAll(StreamingResponseBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
     private static FileFullInfo fileInfoFromPath(FilePath path, long size) {
         if (path.isDir()) {
             return new FileFullInfo(path.username(), path.getDirectoryPath(), path.getDirectoryName(), size, true);
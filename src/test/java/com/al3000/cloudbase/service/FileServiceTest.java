@@ -3,11 +3,19 @@ package com.al3000.cloudbase.service;
 import com.al3000.cloudbase.dto.FileFullInfo;
 import com.al3000.cloudbase.dto.FileInfo;
 import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderPage;
+import com.al3000.cloudbase.dto.ObjectMetadata;
+import com.al3000.cloudbase.dto.StoredObject;
 import com.al3000.cloudbase.exception.DestinationAlreadyExistsException;
 import com.al3000.cloudbase.exception.FileDoesNotExistsException;
 import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
 import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.service.index.MetadataIndex;
+import com.al3000.cloudbase.service.index.UserIndex;
 import com.al3000.cloudbase.service.search.LibrarySearch;
+import com.al3000.cloudbase.service.search.MatchMode;
+import com.al3000.cloudbase.service.search.MultiPatternSearch;
 import com.al3000.cloudbase.service.search.StringSearchAlgorithm;
 import io.minio.errors.ServerException;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,17 +23,25 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpRange;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.hibernate.internal.util.collections.CollectionHelper.listOf;
@@ -38,6 +54,12 @@ class FileServiceTest {
     @Mock
     FileRepository fileRepository;
 
+    @Mock
+    MetadataIndex metadataIndex;
+
+    @Mock
+    StorageQuota storageQuota;
+
     StringSearchAlgorithm stringSearchAlgorithm = new LibrarySearch();
 
     @InjectMocks
@@ -45,14 +67,32 @@ class FileServiceTest {
 
     @BeforeEach
     void setUp() {
-        fileService = new FileService(fileRepository, stringSearchAlgorithm);
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var folderMarkerManager = new FolderMarkerManager(fileRepository, 100, 100);
+        fileService = new FileService(fileRepository, stringSearchAlgorithm,
+                new MultiPatternSearch(),
+                new ObjectPrefetcher(fileRepository, executor, 4),
+                new MoveEngine(fileRepository, executor, 4),
+                metadataIndex,
+                new UploadEngine(fileRepository, executor, new DirectBufferPool(DataSize.ofMegabytes(5), 2),
+                        folderMarkerManager, 2, 2),
+                folderMarkerManager,
+                new DownloadWriter(DataSize.ofKilobytes(8), 2),
+                new ArchivePolicy(List.of("jpg"), List.of("video/"), 6),
+                new ParallelZipWriter(DataSize.ofKilobytes(4), 2),
+                storageQuota);
     }
 
     // Helpers
-    private static byte[] readAll(InputStream in) throws IOException {
-        try (in) {
-            return in.readAllBytes();
-        }
+    private static byte[] writeAll(StreamingResponseBody body) throws IOException {
+        var out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+    private static StoredObject storedObject(byte[] payload) {
+        return new StoredObject(
+                new ObjectMetadata(payload.length, "etag", Instant.EPOCH, "application/octet-stream"),
+                new ByteArrayInputStream(payload));
     }
     private void MockCreateFolder() throws InternalServerException {
         when(fileRepository.createFolder(any())).thenAnswer(
@@ -140,6 +180,107 @@ class FileServiceTest {
         verifyNoMoreInteractions(fileRepository);
     }
 
+    @Test
+    void uploadStream_createsParentFolders_andRecordsStoredSize() throws Exception {
+        // Arrange
+        FilePath path = new FilePath(username, "a/big.bin");
+        byte[] payload = new byte[4096];
+
+        MockCreateFolder();
+        doAnswer(invocation -> {
+            invocation.getArgument(0, InputStream.class).transferTo(OutputStream.nullOutputStream());
+            return null;
+        }).when(fileRepository).uploadStream(any(), eq(4096L), eq(5L * 1024 * 1024), eq("application/octet-stream"), eq(path));
+
+        // Act
+        FileInfo result = fileService.uploadStream(new ByteArrayInputStream(payload), -1L, "application/octet-stream", path);
+
+        // Assert
+        verify(fileRepository).createFolder(new FilePath(username, "a/"));
+        verify(metadataIndex).recordFile(path, 4096L);
+        assertThat(result).isEqualTo(new FileInfo("a/", "big.bin", 4096L, "FILE"));
+    }
+
+    @Test
+    void uploadStream_toFolderPath_throwsWithoutUploading() {
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.uploadStream(InputStream.nullInputStream(), 0L, null, new FilePath(username, "a/")))
+                .isInstanceOf(InternalServerException.class);
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void uploadComposed_createsParentFolders_thenComposesAndRecords() throws Exception {
+        // Arrange
+        FilePath path = new FilePath(username, "a/b/big.iso");
+        List<String> parts = List.of(".uploads/id/00001", ".uploads/id/00002");
+        MockCreateFolder();
+
+        // Act
+        FileInfo result = fileService.uploadComposed(parts, 42L, null, path);
+
+        // Assert
+        var inOrder = inOrder(fileRepository);
+        inOrder.verify(fileRepository).createFolder(new FilePath(username, "a/"));
+        inOrder.verify(fileRepository).createFolder(new FilePath(username, "a/b/"));
+        inOrder.verify(fileRepository).composeStaged(parts, path, null);
+        verify(metadataIndex).recordFile(path, 42L);
+        assertThat(result).isEqualTo(new FileInfo("a/b/", "big.iso", 42L, "FILE"));
+    }
+
+    @Test
+    void uploadFiles_createsEachAncestorFolderOnce_thenStoresEveryFile() throws Exception {
+        // Arrange
+        FilePath folder = new FilePath(username, "up/");
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("object", "a.txt", "text/plain", "a".getBytes(StandardCharsets.UTF_8)),
+                new MockMultipartFile("object", "sub/b.txt", "text/plain", "bb".getBytes(StandardCharsets.UTF_8)),
+                new MockMultipartFile("object", "sub/deeper/c.txt", "text/plain", "ccc".getBytes(StandardCharsets.UTF_8))
+        );
+        MockCreateFolder();
+
+        // Act
+        List<FileInfo> result = fileService.uploadFiles(files, folder);
+
+        // Assert
+        var folderCaptor = ArgumentCaptor.forClass(FilePath.class);
+        verify(fileRepository, times(3)).createFolder(folderCaptor.capture());
+        assertThat(folderCaptor.getAllValues()).extracting(FilePath::path)
+                .containsExactlyInAnyOrder("up/", "up/sub/", "up/sub/deeper/");
+        verify(fileRepository).uploadStream(any(), eq(3L), anyLong(), eq("text/plain"), eq(new FilePath(username, "up/sub/deeper/c.txt")));
+        verify(fileRepository, times(3)).uploadStream(any(), anyLong(), anyLong(), any(), any());
+        verify(metadataIndex).recordFile(new FilePath(username, "up/sub/b.txt"), 2L);
+        assertThat(result).extracting(FileInfo::name).containsExactly("a.txt", "b.txt", "c.txt");
+    }
+
+    @Test
+    void ancestorFolders_listsFoldersFromRoot() {
+        assertThat(FileService.ancestorFolders(new FilePath(username, "a/b/c.txt"))).extracting(FilePath::path)
+                .containsExactly("a/", "a/b/");
+        assertThat(FileService.ancestorFolders(new FilePath(username, "a/b/"))).extracting(FilePath::path)
+                .containsExactly("a/", "a/b/");
+    }
+
+    @Test
+    void uploadFile_repeatedIntoSameFolder_writesMarkersOnce_untilFolderIsRemoved() throws Exception {
+        // Arrange
+        MultipartFile file = new MockMultipartFile("file", "hello.txt", "text/plain", "hi".getBytes(StandardCharsets.UTF_8));
+        FilePath path = new FilePath(username, "a/b/");
+        MockCreateFolder();
+        when(fileRepository.getFolderContentUnordered(new FilePath(username, "a/"))).thenReturn(Stream.empty());
+
+        // Act
+        fileService.uploadFile(file, path);
+        fileService.uploadFile(file, path);
+        fileService.removeFile(new FilePath(username, "a/"));
+        fileService.uploadFile(file, path);
+
+        // Assert
+        verify(fileRepository, times(2)).createFolder(new FilePath(username, "a/"));
+        verify(fileRepository, times(2)).createFolder(path);
+        verify(metadataIndex, times(2)).recordFolder(path);
+    }
+
     // ---------------- getFolderFiles ----------------
 
 
@@ -178,6 +319,113 @@ class FileServiceTest {
         assertThat(result).contains(realFile.getFileInfo(), directory.getFileInfo());
     }
 
+    @Test
+    void getFolderFiles_reportsAggregatedSizeOfDirectories() {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+        FileFullInfo directory = makeDirectory("a/", "b");
+        FileFullInfo realFile = makeFile("a/", "x.txt");
+
+        when(fileRepository.getFolderContent(folder, false))
+                .thenReturn(Stream.of(directory, realFile));
+        when(storageQuota.folderSizes(username, List.of("a/b/"))).thenReturn(Map.of("a/b/", 2048L));
+
+        // Act
+        List<FileInfo> result = fileService.getFolderFiles(folder).toList();
+
+        // Assert
+        assertThat(result).containsExactly(
+                new FileInfo("a/", "b/", 2048L, "DIRECTORY"),
+                realFile.getFileInfo());
+    }
+
+    @Test
+    void uploadFile_whenQuotaExceeded_doesNotTouchStorage() throws Exception {
+        // Arrange
+        MultipartFile file = new MockMultipartFile("file", "hello.txt", "text/plain", "hi".getBytes(StandardCharsets.UTF_8));
+        FilePath path = new FilePath(username, "a/");
+        when(storageQuota.reserve(path, 2L)).thenThrow(new QuotaExceededException("full"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.uploadFile(file, path))
+                .isInstanceOf(QuotaExceededException.class);
+        verifyNoInteractions(fileRepository, metadataIndex);
+    }
+
+    @Test
+    void getFolderPage_returnsCursorOnlyWhenMoreEntriesExist() {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+        FileFullInfo marker = makeDirectory("", "a");
+        FileFullInfo first = makeFile("a/", "x.txt");
+        FileFullInfo second = makeFile("a/", "y.txt");
+        FileFullInfo third = makeFile("a/", "z.txt");
+
+        when(fileRepository.getFolderPage(folder, null, 3)).thenReturn(Stream.of(marker, first, second, third));
+        when(fileRepository.getFolderPage(folder, "a/y.txt", 3)).thenReturn(Stream.of(third));
+
+        // Act
+        FolderPage firstPage = fileService.getFolderPage(folder, null, 2);
+        FolderPage lastPage = fileService.getFolderPage(folder, firstPage.nextCursor(), 2);
+
+        // Assert
+        assertThat(firstPage.items()).containsExactly(first.getFileInfo(), second.getFileInfo());
+        assertThat(firstPage.nextCursor()).isEqualTo("a/y.txt");
+        assertThat(lastPage.items()).containsExactly(third.getFileInfo());
+        assertThat(lastPage.nextCursor()).isNull();
+    }
+
+    @Test
+    void getFolderPage_rejectsCursorOutsideFolder() {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.getFolderPage(folder, "b/x.txt", 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> fileService.getFolderPage(folder, null, FileService.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void getFolderFiles_whenIndexIsWarm_doesNotListStorage() {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+        UserIndex index = new UserIndex(username);
+        index.markReady();
+        index.recordFolder(new FilePath(username, "a/b/"));
+        index.recordFile(new FilePath(username, "a/x.txt"), 12L);
+        index.recordFile(new FilePath(username, "a/b/y.txt"), 12L);
+
+        when(metadataIndex.find(folder)).thenReturn(Optional.of(index));
+
+        // Act
+        List<FileInfo> result = fileService.getFolderFiles(folder).toList();
+
+        // Assert
+        assertThat(result).containsExactly(
+                makeDirectory("a/", "b").getFileInfo(),
+                makeFile("a/", "x.txt").getFileInfo());
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void getFolderPage_whenIndexIsColdButCataloged_pagesTheCatalog() {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+        FileFullInfo first = makeFile("a/", "x.txt");
+
+        when(metadataIndex.listCold(folder, "a/b/", 3)).thenReturn(Optional.of(Stream.of(first)));
+
+        // Act
+        FolderPage page = fileService.getFolderPage(folder, "a/b/", 2);
+
+        // Assert
+        assertThat(page.items()).containsExactly(first.getFileInfo());
+        assertThat(page.nextCursor()).isNull();
+        verifyNoInteractions(fileRepository);
+    }
+
     // ---------------- removeFile ----------------
 
     @Test
@@ -237,8 +485,7 @@ class FileServiceTest {
 
         FileFullInfo targetFullInfo = makeFile("a/", "x.txt");
 
-        when(fileRepository.fileExist(argThat(fp -> fp.path().equals("b/x.txt"))))
-                .thenReturn(false);
+        when(fileRepository.existingKeys(eq(target), any())).thenReturn(Set.of());
         when(fileRepository.getFileInformation(target)).thenReturn(targetFullInfo);
 
         // Act
@@ -251,24 +498,24 @@ class FileServiceTest {
         assertThat(del).hasSize(1);
     }
     @Test
-    void move_whenAnyTargetExists_throwsDestinationAlreadyExist_andDoesNotCopyOrRemove() {
+    void move_whenAnyTargetExists_throwsDestinationAlreadyExist_andDoesNotCopyOrRemove() throws Exception {
         // Arrange
         FilePath source = new FilePath(username, "a/");
         FilePath target = new FilePath(username, "b/");
 
         FileFullInfo obj = makeFile("a/", "x.txt");
 
-        when(fileRepository.getFolderContent(source, true))
+        when(fileRepository.getFolderContentUnordered(source))
                 .thenReturn(Stream.of(obj));
 
-        when(fileRepository.fileExist(argThat(fp -> fp.path().equals("b/x.txt"))))
-                .thenReturn(true);
+        when(fileRepository.existingKeys(eq(target), argThat(targets -> targets.contains(new FilePath(username, "b/x.txt")))))
+                .thenReturn(Set.of(new FilePath(username, "b/x.txt")));
 
         // Act & Assert
         assertThatThrownBy(() -> fileService.move(source, target))
                 .isInstanceOf(DestinationAlreadyExistsException.class);
 
-        verify(fileRepository).getFolderContent(any(), any());
+        verify(fileRepository).getFolderContentUnordered(any());
         verifyNoMoreInteractions(fileRepository);
     }
 
@@ -281,9 +528,9 @@ class FileServiceTest {
         FileFullInfo obj1 = makeFile("a/", "x.txt");
         FileFullInfo obj2 = makeFile("a/c/", "y.txt");
 
-        when(fileRepository.getFolderContent(source, true)).thenReturn(Stream.of(obj1, obj2));
+        when(fileRepository.getFolderContentUnordered(source)).thenReturn(Stream.of(obj1, obj2));
 
-        when(fileRepository.fileExist(any())).thenReturn(false);
+        when(fileRepository.existingKeys(eq(target), any())).thenReturn(Set.of());
 
         MockCreateFolder();
 
@@ -313,8 +560,8 @@ class FileServiceTest {
 
         FileFullInfo obj = makeFile("a/", "x.txt");
 
-        when(fileRepository.getFolderContent(source, true)).thenReturn(Stream.of(obj));
-        when(fileRepository.fileExist(any())).thenReturn(false);
+        when(fileRepository.getFolderContentUnordered(source)).thenReturn(Stream.of(obj));
+        when(fileRepository.existingKeys(eq(target), any())).thenReturn(Set.of());
 
         doThrow(new ServerException("boom", 500, "boom")).when(fileRepository)
                 .copyObject(any(), any());
@@ -324,6 +571,68 @@ class FileServiceTest {
                 .isInstanceOf(InternalServerException.class);
     }
 
+    @Test
+    void move_whenCopyFails_rollsBackCopiedObjects_andKeepsSources() throws Exception {
+        // Arrange
+        FilePath source = new FilePath(username, "a/");
+        FilePath target = new FilePath(username, "b/");
+
+        FileFullInfo obj1 = makeFile("a/", "x.txt");
+        FileFullInfo obj2 = makeFile("a/", "y.txt");
+
+        when(fileRepository.getFolderContentUnordered(source)).thenReturn(Stream.of(obj1, obj2));
+        when(fileRepository.existingKeys(eq(target), any())).thenReturn(Set.of());
+
+        doNothing().when(fileRepository)
+                .copyObject(eq(obj1.getFilePath()), any());
+        doThrow(new ServerException("boom", 500, "boom")).when(fileRepository)
+                .copyObject(eq(obj2.getFilePath()), any());
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.move(source, target))
+                .isInstanceOf(InternalServerException.class);
+
+        verify(fileRepository, times(1)).removeFiles(deleteCaptor.capture());
+        assertThat(deleteCaptor.getValue()).extracting(FilePath::path)
+                .containsExactly("b/x.txt");
+    }
+
+    @Test
+    void move_whenCopyFailsAfterTheTargetMarker_forgetsIt_andNextUploadRecreatesIt() throws Exception {
+        // Arrange
+        FilePath source = new FilePath(username, "a/");
+        FilePath target = new FilePath(username, "b/");
+
+        FileFullInfo marker = makeDirectory("", "a");
+        FileFullInfo obj = makeFile("a/", "x.txt");
+
+        when(fileRepository.getFolderContentUnordered(source)).thenReturn(Stream.of(marker, obj));
+        when(fileRepository.existingKeys(eq(target), any())).thenReturn(Set.of());
+        MockCreateFolder();
+
+        doNothing().when(fileRepository)
+                .copyObject(eq(marker.getFilePath()), any());
+        doThrow(new ServerException("boom", 500, "boom")).when(fileRepository)
+                .copyObject(eq(obj.getFilePath()), any());
+
+        MultipartFile file = new MockMultipartFile("file", "hello.txt", "text/plain", "hi".getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        assertThatThrownBy(() -> fileService.move(source, target))
+                .isInstanceOf(InternalServerException.class);
+        fileService.uploadFile(file, target);
+
+        // Assert
+        verify(fileRepository).removeFiles(deleteCaptor.capture());
+        assertThat(deleteCaptor.getValue()).extracting(FilePath::path)
+                .containsExactly("b/");
+        verify(metadataIndex).remove(target);
+
+        verify(fileRepository, times(2)).createFolder(target);
+        verify(metadataIndex, times(2)).recordFolder(target);
+        verify(fileRepository).uploadFile(file, target);
+    }
+
     // ---------------- findFiles ----------------
 
     @Test
@@ -346,26 +655,178 @@ class FileServiceTest {
         assertThat(result).containsOnly(cat.getFileInfo());
     }
 
+    @Test
+    void findFiles_withSeveralTerms_appliesMatchMode() {
+        // Arrange
+        FilePath root = new FilePath(username, "");
+
+        FileFullInfo both = makeFile("docs/", "invoice-report-2024.pdf");
+        FileFullInfo reportOnly = makeFile("docs/", "report.txt");
+        FileFullInfo none = makeFile("docs/", "notes.txt");
+        FileFullInfo directory = makeDirectory("", "report");
+
+        when(fileRepository.getFolderContent(root, true))
+                .thenAnswer(invocation -> Stream.of(directory, both, reportOnly, none));
+
+        // Act
+        List<FileInfo> any = fileService.findFiles(root, "report invoice", MatchMode.ANY).toList();
+        List<FileInfo> all = fileService.findFiles(root, "report  invoice", MatchMode.ALL).toList();
+
+        // Assert
+        assertThat(any).containsExactly(both.getFileInfo(), reportOnly.getFileInfo());
+        assertThat(all).containsExactly(both.getFileInfo());
+    }
+
+    @Test
+    void findFiles_withoutMode_searchesTheWholePhrase() {
+        // Arrange
+        FilePath root = new FilePath(username, "");
+
+        FileFullInfo phrase = makeFile("docs/", "annual report.pdf");
+        FileFullInfo reportOnly = makeFile("docs/", "report.txt");
+
+        when(fileRepository.getFolderContent(root, true))
+                .thenAnswer(invocation -> Stream.of(phrase, reportOnly));
+
+        // Act
+        List<FileInfo> result = fileService.findFiles(root, "annual report", null).toList();
+
+        // Assert
+        assertThat(result).containsExactly(phrase.getFileInfo());
+    }
+
+    @Test
+    void findFiles_whenIndexIsColdButCataloged_verifiesCatalogCandidates() {
+        // Arrange
+        FilePath root = new FilePath(username, "");
+
+        FileFullInfo both = makeFile("docs/", "invoice-report-2024.pdf");
+        FileFullInfo longestOnly = makeFile("docs/", "invoice.txt");
+
+        when(metadataIndex.searchCold(root, "invoice")).thenReturn(Optional.of(Stream.of(both, longestOnly)));
+
+        // Act
+        List<FileInfo> result = fileService.findFiles(root, "report invoice", MatchMode.ALL).toList();
+
+        // Assert
+        assertThat(result).containsExactly(both.getFileInfo());
+        verifyNoInteractions(fileRepository);
+    }
+
+    @Test
+    void findFiles_withLimit_stopsConsumingListing() {
+        // Arrange
+        FilePath root = new FilePath(username, "");
+        var pulled = new AtomicInteger();
+        Stream<FileFullInfo> endless = IntStream.iterate(0, i -> i + 1)
+                .peek(i -> pulled.incrementAndGet())
+                .mapToObj(i -> makeFile("docs/", (i % 2 == 0 ? "report-" : "notes-") + i + ".txt"));
+        when(fileRepository.getFolderContent(root, true)).thenReturn(endless);
+
+        // Act
+        List<FileInfo> result = fileService.findFiles(root, "report", MatchMode.ANY, 1, 2).toList();
+
+        // Assert
+        assertThat(result).extracting(FileInfo::name).containsExactly("report-2.txt", "report-4.txt");
+        assertThat(pulled.get()).isEqualTo(5);
+    }
+
+    @Test
+    void findFiles_withNegativeOffset_throws() {
+        // Arrange
+        FilePath root = new FilePath(username, "");
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.findFiles(root, "report", MatchMode.ANY, -1, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     // ---------------- downloadFile in downloadObject ----------------
 
     @Test
-    void downloadObject_whenFile_returnsInputStreamResourceFromRepository() throws Exception {
+    void downloadObject_whenFile_streamsContentFromRepository() throws Exception {
         // Arrange
         FilePath file = new FilePath(username, "a/x.txt");
 
-        FileFullInfo info = makeFile("a/", "x.txt");
-        when(fileRepository.getFileInformation(file)).thenReturn(info);
-
         byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
-        when(fileRepository.downloadFile(file)).thenReturn(new ByteArrayInputStream(payload));
+        when(fileRepository.openFile(file)).thenReturn(new StoredObject(
+                new ObjectMetadata(payload.length, "abc", Instant.EPOCH, "text/plain"),
+                new ByteArrayInputStream(payload)));
 
         // Act
-        InputStreamResource res = fileService.downloadObject(file);
+        StreamingResponseBody res = fileService.downloadObject(file);
 
         // Assert
         assertThat(res).isNotNull();
-        assertThat(readAll(res.getInputStream())).isEqualTo(payload);
+        assertThat(writeAll(res)).isEqualTo(payload);
+        // Body and metadata come from one request, the file is not stat-ed first
+        verify(fileRepository, never()).getFileInformation(any());
+    }
+
+    @Test
+    void downloadFile_closesObjectAfterStreaming() throws Exception {
+        // Arrange
+        var closed = new boolean[1];
+        var stream = new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        var object = new StoredObject(new ObjectMetadata(5, "abc", Instant.EPOCH, "text/plain"), stream);
+
+        // Act
+        byte[] written = writeAll(fileService.downloadFile(object));
+
+        // Assert
+        assertThat(new String(written, StandardCharsets.UTF_8)).isEqualTo("hello");
+        assertThat(closed[0]).isTrue();
+    }
+
+    @Test
+    void downloadRange_streamsOnlyRequestedSlice() throws Exception {
+        // Arrange
+        FilePath file = new FilePath(username, "a/x.txt");
+        when(fileRepository.downloadRange(file, 2, 3))
+                .thenReturn(new ByteArrayInputStream("llo".getBytes(StandardCharsets.UTF_8)));
+
+        // Act
+        StreamingResponseBody res = fileService.downloadRange(file, 2, 3);
+
+        // Assert
+        assertThat(new String(writeAll(res), StandardCharsets.UTF_8)).isEqualTo("llo");
+    }
+
+    @Test
+    void downloadRanges_writesMultipartBodyWithPartHeaders() throws Exception {
+        // Arrange
+        FilePath file = new FilePath(username, "a/x.txt");
+        ObjectMetadata metadata = new ObjectMetadata(11, "abc", Instant.EPOCH, "text/plain");
+        when(fileRepository.downloadRange(file, 0, 2))
+                .thenReturn(new ByteArrayInputStream("he".getBytes(StandardCharsets.UTF_8)));
+        when(fileRepository.downloadRange(file, 6, 5))
+                .thenReturn(new ByteArrayInputStream("world".getBytes(StandardCharsets.UTF_8)));
+
+        // Act
+        StreamingResponseBody res = fileService.downloadRanges(file, metadata, HttpRange.parseRanges("bytes=0-1,-5"), "sep");
+
+        // Assert
+        assertThat(new String(writeAll(res), StandardCharsets.UTF_8)).isEqualTo(
+                "\r\n--sep\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/11\r\n\r\nhe" +
+                "\r\n--sep\r\nContent-Type: text/plain\r\nContent-Range: bytes 6-10/11\r\n\r\nworld" +
+                "\r\n--sep--\r\n");
     }
+
+    @Test
+    void describeFile_whenDir_throwsWithoutStat() {
+        // Arrange
+        FilePath dir = new FilePath(username, "a/");
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.describeFile(dir)).isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(fileRepository);
+    }
+
     // ---------------- downloadFolder in downloadObject  ----------------
 
     @Test
@@ -379,13 +840,12 @@ class FileServiceTest {
         when(fileRepository.getFolderContent(folder, true)).thenReturn(Stream.of(dir, file));
 
         byte[] payload = "content".getBytes(StandardCharsets.UTF_8);
-        when(fileRepository.downloadFile(file.getFilePath())).thenReturn(new ByteArrayInputStream(payload));
+        when(fileRepository.openFile(file.getFilePath())).thenReturn(storedObject(payload));
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ZipOutputStream zout = new ZipOutputStream(baos)) {
-            // Act
-            fileService.downloadFolder(folder, zout);
-        }
+
+        // Act
+        fileService.downloadFolder(folder, baos);
 
         // Assert
         byte[] zipBytes = baos.toByteArray();
@@ -401,6 +861,38 @@ class FileServiceTest {
         }
     }
 
+    @Test
+    void downloadFolder_withPrefetch_keepsListingOrder() throws Exception {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+
+        List<FileFullInfo> files = IntStream.range(0, 10)
+                .mapToObj(i -> makeFile("a/", "f" + i + ".txt"))
+                .toList();
+
+        when(fileRepository.getFolderContent(folder, true)).thenReturn(files.stream());
+        for (var file : files) {
+            when(fileRepository.openFile(file.getFilePath()))
+                    .thenReturn(storedObject(file.name().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        // Act
+        fileService.downloadFolder(folder, baos);
+
+        // Assert
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            for (var file : files) {
+                ZipEntry entry = zin.getNextEntry();
+                assertThat(entry).isNotNull();
+                assertThat(entry.getName()).isEqualTo(file.name());
+                assertThat(zin.readAllBytes()).isEqualTo(file.name().getBytes(StandardCharsets.UTF_8));
+            }
+            assertThat(zin.getNextEntry()).isNull();
+        }
+    }
+
     @Test
     void downloadFolder_catchError_Rethrows() throws Exception {
         // Arrange
@@ -411,13 +903,12 @@ class FileServiceTest {
 
         when(fileRepository.getFolderContent(folder, true)).thenReturn(Stream.of(dir, file));
 
-        when(fileRepository.downloadFile(file.getFilePath())).thenThrow(new InternalServerException("boom"));
+        when(fileRepository.openFile(file.getFilePath())).thenThrow(new InternalServerException("boom"));
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ZipOutputStream zout = new ZipOutputStream(baos)) {
-            // Act & Assert
-            assertThatThrownBy(() -> fileService.downloadFolder(folder, zout)).isInstanceOf(InternalServerException.class);
-        }
+
+        // Act & Assert
+        assertThatThrownBy(() -> fileService.downloadFolder(folder, baos)).isInstanceOf(InternalServerException.class);
     }
 
     @Test
@@ -436,11 +927,11 @@ class FileServiceTest {
         when(fileRepository.getFileInformation(folder)).thenReturn(info);
 
         byte[] payload = "HELLO".getBytes(StandardCharsets.UTF_8);
-        when(fileRepository.downloadFile(file.getFilePath())).thenReturn(new ByteArrayInputStream(payload));
+        when(fileRepository.openFile(file.getFilePath())).thenReturn(storedObject(payload));
 
         // Act
-        InputStreamResource res = fileService.downloadObject(folder);
-        byte[] zipBytes = readAll(res.getInputStream());
+        StreamingResponseBody res = fileService.downloadObject(folder);
+        byte[] zipBytes = writeAll(res);
 
         // Assert
         // Verify zip contains entry "x.txt" with correct content
@@ -458,6 +949,38 @@ class FileServiceTest {
         }
     }
 
+    @Test
+    void downloadFolder_storesCompressedMediaAtLevelZero() throws Exception {
+        // Arrange
+        FilePath folder = new FilePath(username, "a/");
+        FileFullInfo photo = makeFile("a/", "photo.jpg");
+        FileFullInfo notes = makeFile("a/", "notes.txt");
+        when(fileRepository.getFolderContent(folder, true)).thenReturn(Stream.of(photo, notes));
+
+        byte[] payload = new byte[64 * 1024];
+        when(fileRepository.openFile(photo.getFilePath())).thenReturn(storedObject(payload));
+        when(fileRepository.openFile(notes.getFilePath())).thenReturn(storedObject(payload));
+
+        var out = new ByteArrayOutputStream();
+
+        // Act
+        fileService.downloadFolder(folder, out);
+
+        // Assert
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry stored = zin.getNextEntry();
+            assertThat(zin.readAllBytes()).isEqualTo(payload);
+            ZipEntry deflated = zin.getNextEntry();
+            assertThat(zin.readAllBytes()).isEqualTo(payload);
+
+            // Sizes are known once the data descriptor after each entry has been read
+            assertThat(stored.getName()).isEqualTo("photo.jpg");
+            assertThat(stored.getCompressedSize()).isGreaterThanOrEqualTo(payload.length);
+            assertThat(deflated.getName()).isEqualTo("notes.txt");
+            assertThat(deflated.getCompressedSize()).isLessThan(payload.length / 10);
+        }
+    }
+
 
     // ---------------- createFolder ----------------
 
@@ -0,0 +1,120 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.repository.FileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FolderMarkerManagerTest {
+    @Mock
+    FileRepository fileRepository;
+
+    FolderMarkerManager folderMarkerManager;
+
+    private final FilePath docs = new FilePath("alice", "docs/");
+
+    @BeforeEach
+    void setUp() {
+        folderMarkerManager = new FolderMarkerManager(fileRepository, 2, 2);
+    }
+
+    @Test
+    void ensure_writesMarkerOnlyOnce() throws Exception {
+        // Act
+        boolean first = folderMarkerManager.ensure(docs);
+        boolean second = folderMarkerManager.ensure(docs);
+
+        // Assert
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        verify(fileRepository, times(1)).createFolder(docs);
+    }
+
+    @Test
+    void ensure_coalescesConcurrentCallsForSameMarker() throws Exception {
+        // Arrange
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(fileRepository.createFolder(docs)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+
+        // Act
+        var results = new ArrayList<Future<Boolean>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            results.add(executor.submit(() -> folderMarkerManager.ensure(docs)));
+            started.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> folderMarkerManager.ensure(docs)));
+            }
+            release.countDown();
+        }
+
+        // Assert
+        long writers = 0;
+        for (var result : results) {
+            writers += result.get() ? 1 : 0;
+        }
+        assertThat(writers).isEqualTo(1);
+        verify(fileRepository, times(1)).createFolder(docs);
+    }
+
+    @Test
+    void ensure_whenWriteFails_doesNotRememberMarker() throws Exception {
+        // Arrange
+        when(fileRepository.createFolder(docs))
+                .thenThrow(new InternalServerException("minio down"))
+                .thenReturn(null);
+
+        // Act & Assert
+        assertThatThrownBy(() -> folderMarkerManager.ensure(docs)).isInstanceOf(InternalServerException.class);
+        assertThat(folderMarkerManager.isKnown(docs)).isFalse();
+        assertThat(folderMarkerManager.ensure(docs)).isTrue();
+    }
+
+    @Test
+    void forget_dropsFolderAndDescendants() {
+        // Arrange
+        folderMarkerManager.remember(docs);
+        folderMarkerManager.remember(new FilePath("alice", "docs/old/"));
+
+        // Act
+        folderMarkerManager.forget(docs);
+
+        // Assert
+        assertThat(folderMarkerManager.isKnown(docs)).isFalse();
+        assertThat(folderMarkerManager.isKnown(new FilePath("alice", "docs/old/"))).isFalse();
+    }
+
+    @Test
+    void remember_isBoundedPerUserAndAcrossUsers() {
+        // Act
+        folderMarkerManager.remember(new FilePath("alice", "a/"));
+        folderMarkerManager.remember(new FilePath("alice", "b/"));
+        folderMarkerManager.remember(new FilePath("alice", "c/"));
+        folderMarkerManager.remember(new FilePath("bob", "a/"));
+        folderMarkerManager.remember(new FilePath("carol", "a/"));
+
+        // Assert
+        assertThat(folderMarkerManager.isKnown(new FilePath("alice", "a/"))).isFalse();
+        assertThat(folderMarkerManager.isKnown(new FilePath("carol", "a/"))).isTrue();
+        assertThat(folderMarkerManager.isKnown(new FilePath("alice", "c/"))).isFalse();
+    }
+}
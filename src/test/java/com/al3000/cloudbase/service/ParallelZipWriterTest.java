@@ -0,0 +1,109 @@
+package com.al3000.cloudbase.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelZipWriterTest {
+
+    private final ParallelZipWriter zipWriter = new ParallelZipWriter(DataSize.ofKilobytes(4), 3);
+
+    @AfterEach
+    void tearDown() {
+        zipWriter.close();
+    }
+
+    private static Map<String, byte[]> sampleEntries() {
+        byte[] random = new byte[50_000];
+        new Random(1).nextBytes(random);
+
+        var entries = new LinkedHashMap<String, byte[]>();
+        entries.put("empty.txt", new byte[0]);
+        entries.put("random.bin", random);
+        entries.put("docs/отчёт.txt", "hello world ".repeat(5000).getBytes(StandardCharsets.UTF_8));
+        // Exactly two blocks, the end of input is found by an empty read
+        entries.put("exact.bin", new byte[8 * 1024]);
+        return entries;
+    }
+
+    private byte[] writeArchive(Map<String, byte[]> entries, int level) throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var archive = zipWriter.open(out)) {
+            for (var entry : entries.entrySet()) {
+                archive.addEntry(entry.getKey(), level, new ByteArrayInputStream(entry.getValue()));
+            }
+            archive.finish();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void archive_readsBackInOrderWithZipInputStream() throws Exception {
+        // Arrange
+        var entries = sampleEntries();
+
+        // Act
+        byte[] zip = writeArchive(entries, 6);
+
+        // Assert
+        try (var zin = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            for (var expected : entries.entrySet()) {
+                ZipEntry entry = zin.getNextEntry();
+                assertThat(entry).isNotNull();
+                assertThat(entry.getName()).isEqualTo(expected.getKey());
+                assertThat(zin.readAllBytes()).isEqualTo(expected.getValue());
+            }
+            assertThat(zin.getNextEntry()).isNull();
+        }
+    }
+
+    @Test
+    void archive_centralDirectoryMatchesEntries(@TempDir Path dir) throws Exception {
+        // Arrange
+        var entries = sampleEntries();
+        Path file = dir.resolve("archive.zip");
+
+        // Act
+        Files.write(file, writeArchive(entries, 0));
+
+        // Assert
+        try (var zip = new ZipFile(file.toFile())) {
+            var names = Collections.list(zip.entries()).stream().map(ZipEntry::getName).toList();
+            assertThat(names).containsExactlyElementsOf(entries.keySet());
+            for (var expected : entries.entrySet()) {
+                var entry = zip.getEntry(expected.getKey());
+                assertThat(entry.getSize()).isEqualTo(expected.getValue().length);
+                try (var in = zip.getInputStream(entry)) {
+                    assertThat(in.readAllBytes()).isEqualTo(expected.getValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    void archive_emptyFolder_isValidZip() throws Exception {
+        // Act
+        byte[] zip = writeArchive(Map.of(), 6);
+
+        // Assert
+        try (var zin = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            assertThat(zin.getNextEntry()).isNull();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderStats;
+import com.al3000.cloudbase.exception.QuotaExceededException;
+import com.al3000.cloudbase.service.catalog.MetadataCatalog;
+import com.al3000.cloudbase.service.index.MetadataIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StorageQuotaTest {
+    @Mock
+    MetadataCatalog metadataCatalog;
+
+    @Mock
+    MetadataIndex metadataIndex;
+
+    private final FilePath root = new FilePath("alice", "");
+    private final FilePath target = new FilePath("alice", "docs/report.pdf");
+
+    @Test
+    void reserve_holdsTheBytesUntilClosed() throws Exception {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(100));
+        when(metadataCatalog.reserve("alice", 40, 100)).thenReturn(true);
+
+        // Act
+        var reservation = quota.reserve(target, 40);
+        verify(metadataCatalog, never()).release(anyString(), anyLong());
+        reservation.close();
+
+        // Assert
+        verify(metadataCatalog).release("alice", 40);
+        verifyNoInteractions(metadataIndex);
+    }
+
+    @Test
+    void reserve_whenItDoesNotFit_throwsWithTheUsedTotal() {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(100));
+        when(metadataCatalog.reserve("alice", 41, 100)).thenReturn(false);
+        when(metadataCatalog.findUsage(root)).thenReturn(Optional.of(new FolderStats("", 60L, 3L)));
+
+        // Act & Assert
+        assertThatThrownBy(() -> quota.reserve(target, 41))
+                .isInstanceOf(QuotaExceededException.class)
+                .hasMessageContaining("60 bytes already used");
+        verify(metadataCatalog, never()).release(anyString(), anyLong());
+    }
+
+    @Test
+    void reserve_withUnknownSize_reservesNothing() throws Exception {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(100));
+        when(metadataCatalog.reserve("alice", 0, 100)).thenReturn(true);
+
+        // Act & Assert
+        assertThatCode(() -> quota.reserve(target, -1).close()).doesNotThrowAnyException();
+        verify(metadataCatalog).release("alice", 0);
+    }
+
+    @Test
+    void reserve_withoutTotals_warmsUpInBackground_andLetsUploadThrough() throws Exception {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(100));
+        when(metadataCatalog.reserve("alice", 10, 100)).thenReturn(false);
+        when(metadataCatalog.findUsage(root)).thenReturn(Optional.empty());
+
+        // Act
+        quota.reserve(target, 10).close();
+
+        // Assert
+        verify(metadataIndex).find(root);
+        verify(metadataCatalog, never()).reconcile(anyString());
+        verify(metadataCatalog, never()).release(anyString(), anyLong());
+    }
+
+    @Test
+    void reserve_whenDisabled_doesNotReadCatalog() throws Exception {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(0));
+
+        // Act
+        quota.reserve(target, Long.MAX_VALUE).close();
+
+        // Assert
+        verifyNoInteractions(metadataCatalog, metadataIndex);
+    }
+
+    @Test
+    void reserve_whenCatalogFails_letsUploadThrough() {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(100));
+        when(metadataCatalog.reserve("alice", 10, 100)).thenThrow(new IllegalStateException("database down"));
+
+        // Act & Assert
+        assertThatCode(() -> quota.reserve(target, 10).close()).doesNotThrowAnyException();
+    }
+
+    @Test
+    void folderSizes_withoutFolders_skipsCatalog() {
+        // Arrange
+        var quota = new StorageQuota(metadataCatalog, metadataIndex, DataSize.ofBytes(0));
+
+        // Act
+        var sizes = quota.folderSizes("alice", List.of());
+
+        // Assert
+        assertThat(sizes).isEmpty();
+        verifyNoInteractions(metadataCatalog);
+    }
+}
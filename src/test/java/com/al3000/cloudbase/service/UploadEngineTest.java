@@ -0,0 +1,116 @@
+package com.al3000.cloudbase.service;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.exception.InternalServerException;
+import com.al3000.cloudbase.repository.FileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadEngineTest {
+    private static final int PART = 5 * 1024 * 1024;
+
+    @Mock
+    FileRepository fileRepository;
+
+    UploadEngine uploadEngine;
+
+    private final FilePath target = new FilePath("alice", "videos/movie.mkv");
+    private final Map<String, byte[]> staged = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        uploadEngine = new UploadEngine(fileRepository, Executors.newVirtualThreadPerTaskExecutor(),
+                new DirectBufferPool(DataSize.ofMegabytes(5), 3), new FolderMarkerManager(fileRepository, 10, 10), 2, 2);
+    }
+
+    private static byte[] payload(int size) {
+        var bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private void stageInMemory() throws InternalServerException {
+        doAnswer(invocation -> {
+            staged.put(invocation.getArgument(0), invocation.getArgument(1, InputStream.class).readAllBytes());
+            return null;
+        }).when(fileRepository).uploadStaged(anyString(), any(), anyLong(), eq((long) PART));
+    }
+
+    @Test
+    void upload_withUnknownSize_uploadsPartsConcurrentlyAndComposesInOrder() throws Exception {
+        // Arrange
+        byte[] body = payload(2 * PART + 123);
+        stageInMemory();
+
+        // Act
+        long stored = uploadEngine.upload(new ByteArrayInputStream(body), -1L, "video/x-matroska", target);
+
+        // Assert
+        assertThat(stored).isEqualTo(body.length);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        verify(fileRepository).composeStaged(keys.capture(), eq(target), eq("video/x-matroska"));
+        assertThat(keys.getValue()).hasSize(3).isSorted();
+
+        var joined = new ByteArrayOutputStream();
+        for (var key : keys.getValue()) {
+            joined.writeBytes(staged.get(key));
+        }
+        assertThat(joined.toByteArray()).isEqualTo(body);
+        verify(fileRepository).removeKeys(keys.getValue());
+        verify(fileRepository, never()).uploadStream(any(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void upload_smallerThanOnePart_isStoredDirectly() throws Exception {
+        // Arrange
+        byte[] body = payload(1000);
+        var uploaded = new AtomicInteger();
+        doAnswer(invocation -> {
+            uploaded.set(invocation.getArgument(0, InputStream.class).readAllBytes().length);
+            return null;
+        }).when(fileRepository).uploadStream(any(), eq(1000L), eq((long) PART), isNull(), eq(target));
+
+        // Act
+        long stored = uploadEngine.upload(new ByteArrayInputStream(body), -1L, null, target);
+
+        // Assert
+        assertThat(stored).isEqualTo(1000L);
+        assertThat(uploaded.get()).isEqualTo(1000);
+        verifyNoMoreInteractions(fileRepository);
+    }
+
+    @Test
+    void upload_whenPartFails_removesStagedPartsWithoutComposing() throws Exception {
+        // Arrange
+        doNothing().doThrow(new InternalServerException("network"))
+                .when(fileRepository).uploadStaged(anyString(), any(), anyLong(), anyLong());
+
+        // Act & Assert
+        assertThatThrownBy(() -> uploadEngine.upload(new ByteArrayInputStream(payload(4 * PART)), -1L, null, target))
+                .isInstanceOf(InternalServerException.class);
+        verify(fileRepository, never()).composeStaged(any(), any(), any());
+        verify(fileRepository).removeKeys(argThat(keys -> !keys.isEmpty()));
+    }
+}
@@ -0,0 +1,227 @@
+package com.al3000.cloudbase.service.catalog;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.FolderStats;
+import com.al3000.cloudbase.model.FileMetadata;
+import com.al3000.cloudbase.repository.FileCatalogOwnerRepository;
+import com.al3000.cloudbase.repository.FileMetadataRepository;
+import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.repository.FolderUsageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+// Catalog writes and folder totals against H2 in PostgreSQL mode, storage is mocked
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(MetadataCatalog.class)
+class MetadataCatalogJpaTest {
+
+    @MockBean
+    FileRepository fileRepository;
+
+    @Autowired
+    MetadataCatalog metadataCatalog;
+
+    @Autowired
+    FileMetadataRepository fileMetadataRepository;
+
+    @Autowired
+    FileCatalogOwnerRepository fileCatalogOwnerRepository;
+
+    @Autowired
+    FolderUsageRepository folderUsageRepository;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Test
+    void reconcile_replacesStaleRowsWithStorageContent() {
+        // Arrange
+        fileMetadataRepository.save(new FileMetadata("alice", "", "gone.txt", 1L, false));
+        when(fileRepository.getFolderContentUnordered(new FilePath("alice", ""))).thenReturn(Stream.of(
+                new FileFullInfo("alice", "", "", 0L, true),
+                new FileFullInfo("alice", "", "docs", 0L, true),
+                new FileFullInfo("alice", "docs/", "a.txt", 3L, false),
+                new FileFullInfo("alice", "", "b.txt", 4L, false)));
+
+        // Act
+        var result = metadataCatalog.reconcile("alice");
+
+        // Assert
+        assertThat(result).hasSize(3);
+        assertThat(keys("alice")).containsExactlyInAnyOrder("docs/", "docs/a.txt", "b.txt");
+        assertThat(fileCatalogOwnerRepository.existsById("alice")).isTrue();
+    }
+
+    @Test
+    void record_sameFileTwice_keepsOneRowWithTheLatestSize() {
+        // Act
+        metadataCatalog.record(new FilePath("alice", "a/x.txt"), 5);
+        metadataCatalog.record(new FilePath("alice", "a/x.txt"), 8);
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        assertThat(fileMetadataRepository.findByOwner("alice"))
+                .singleElement()
+                .extracting(FileMetadata::getSize)
+                .isEqualTo(8L);
+    }
+
+    @Test
+    void move_folder_rebasesEveryRowBelowIt() {
+        // Arrange
+        metadataCatalog.record(new FilePath("alice", "a/b/"), 0);
+        metadataCatalog.record(new FilePath("alice", "a/b/x.txt"), 5);
+        metadataCatalog.record(new FilePath("alice", "a/b/c/y.txt"), 7);
+        metadataCatalog.record(new FilePath("alice", "a/bc.txt"), 1);
+
+        // Act
+        metadataCatalog.move(new FilePath("alice", "a/b/"), new FilePath("alice", "d/"));
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        assertThat(keys("alice")).containsExactlyInAnyOrder("d/", "d/x.txt", "d/c/y.txt", "a/bc.txt");
+    }
+
+    @Test
+    void move_file_replacesItsRow() {
+        // Arrange
+        metadataCatalog.record(new FilePath("alice", "a/x.txt"), 5);
+
+        // Act
+        metadataCatalog.move(new FilePath("alice", "a/x.txt"), new FilePath("alice", "b/y.txt"));
+        entityManager.flush();
+        entityManager.clear();
+
+        // Assert
+        assertThat(fileMetadataRepository.findByOwner("alice"))
+                .singleElement()
+                .satisfies(metadata -> {
+                    assertThat(metadata.getParentPath() + metadata.getName()).isEqualTo("b/y.txt");
+                    assertThat(metadata.getSize()).isEqualTo(5L);
+                });
+    }
+
+    @Test
+    void recordMoveRemove_keepFolderTotalsInStepWithTheFiles() {
+        // Arrange
+        metadataCatalog.record(new FilePath("alice", "a/b/x.txt"), 5);
+        metadataCatalog.record(new FilePath("alice", "a/y.txt"), 7);
+
+        // Act & Assert
+        assertThat(totals("")).containsExactly(12L, 2L);
+        assertThat(totals("a/")).containsExactly(12L, 2L);
+        assertThat(totals("a/b/")).containsExactly(5L, 1L);
+
+        metadataCatalog.move(new FilePath("alice", "a/b/"), new FilePath("alice", "c/"));
+        assertThat(totals("")).containsExactly(12L, 2L);
+        assertThat(totals("a/")).containsExactly(7L, 1L);
+        assertThat(totals("c/")).containsExactly(5L, 1L);
+        assertThat(totals("a/b/")).isEmpty();
+
+        metadataCatalog.remove(new FilePath("alice", "a/y.txt"));
+        assertThat(totals("")).containsExactly(5L, 1L);
+        assertThat(totals("a/")).containsExactly(0L, 0L);
+
+        metadataCatalog.remove(new FilePath("alice", "c/"));
+        assertThat(totals("")).containsExactly(0L, 0L);
+        assertThat(totals("c/")).isEmpty();
+    }
+
+    @Test
+    void children_withoutCatalog_isEmpty_soCallersListStorage() {
+        // Act & Assert
+        assertThat(metadataCatalog.children(new FilePath("alice", ""))).isEmpty();
+        assertThat(metadataCatalog.findFiles(new FilePath("alice", ""), "x")).isEmpty();
+    }
+
+    @Test
+    void childrenAndFindFiles_returnCatalogRowsInObjectKeyOrder() {
+        // Arrange
+        when(fileRepository.getFolderContentUnordered(new FilePath("alice", ""))).thenReturn(Stream.of(
+                new FileFullInfo("alice", "", "a", 0L, true),
+                new FileFullInfo("alice", "", "a.txt", 1L, false),
+                new FileFullInfo("alice", "a/", "b.txt", 2L, false)));
+        metadataCatalog.reconcile("alice");
+
+        // Act
+        var children = metadataCatalog.children(new FilePath("alice", ""));
+        var found = metadataCatalog.findFiles(new FilePath("alice", ""), ".txt");
+
+        // Assert
+        assertThat(children.orElseThrow())
+                .extracting(info -> info.getFilePath().path())
+                .containsExactly("a.txt", "a/");
+        assertThat(found.orElseThrow())
+                .extracting(info -> info.getFilePath().path())
+                .containsExactly("a.txt", "a/b.txt");
+    }
+
+    @Test
+    void insertIfAbsent_existingRow_keepsItsTotals() {
+        // Arrange
+        folderUsageRepository.insertIfAbsent("alice", "a/");
+        folderUsageRepository.add("alice", List.of("a/"), 5, 1);
+
+        // Act
+        folderUsageRepository.insertIfAbsent("alice", "a/");
+
+        // Assert
+        assertThat(totals("a/")).containsExactly(5L, 1L);
+        assertThat(folderUsageRepository.findByOwnerAndPathIn("alice", List.of("a/"))).hasSize(1);
+    }
+
+    @Test
+    void reserve_countsReservedBytesUntilReleased() {
+        // Arrange
+        metadataCatalog.record(new FilePath("alice", "a/x.txt"), 60);
+
+        // Act & Assert
+        assertThat(metadataCatalog.reserve("alice", 30, 100)).isTrue();
+        assertThat(metadataCatalog.reserve("alice", 11, 100)).isFalse();
+        assertThat(metadataCatalog.findUsage(new FilePath("alice", ""))).get()
+                .extracting(FolderStats::size).isEqualTo(90L);
+
+        metadataCatalog.release("alice", 30);
+        assertThat(metadataCatalog.reserve("alice", 40, 100)).isTrue();
+
+        metadataCatalog.release("alice", 100);
+        assertThat(metadataCatalog.findUsage(new FilePath("alice", ""))).get()
+                .extracting(FolderStats::size).isEqualTo(60L);
+    }
+
+    @Test
+    void reserve_withoutRootTotals_isRefused_andNothingIsReconciled() {
+        // Act & Assert
+        assertThat(metadataCatalog.reserve("alice", 0, 100)).isFalse();
+        assertThat(metadataCatalog.findUsage(new FilePath("alice", ""))).isEmpty();
+        verifyNoInteractions(fileRepository);
+    }
+
+    private List<Long> totals(String folder) {
+        return folderUsageRepository.findByOwnerAndPath("alice", folder)
+                .map(usage -> List.of(usage.getTotalBytes(), usage.getFileCount()))
+                .orElse(List.of());
+    }
+
+    private List<String> keys(String owner) {
+        return fileMetadataRepository.findByOwner(owner).stream()
+                .map(metadata -> metadata.getParentPath() + metadata.getName() + (metadata.getDirectory() ? "/" : ""))
+                .toList();
+    }
+}
@@ -0,0 +1,114 @@
+package com.al3000.cloudbase.service.catalog;
+
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.model.FileMetadata;
+import com.al3000.cloudbase.model.FolderUsage;
+import com.al3000.cloudbase.repository.FileCatalogOwnerRepository;
+import com.al3000.cloudbase.repository.FileMetadataRepository;
+import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.repository.FolderUsageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MetadataCatalogTest {
+    @Mock
+    FileRepository fileRepository;
+
+    @Mock
+    FileMetadataRepository fileMetadataRepository;
+
+    @Mock
+    FileCatalogOwnerRepository fileCatalogOwnerRepository;
+
+    @Mock
+    FolderUsageRepository folderUsageRepository;
+
+    MetadataCatalog metadataCatalog;
+
+    @BeforeEach
+    void setUp() {
+        metadataCatalog = new MetadataCatalog(
+                fileRepository, fileMetadataRepository, fileCatalogOwnerRepository, folderUsageRepository);
+    }
+
+    @Test
+    void foldersOf_listsRootAndEveryAncestor() {
+        // Act & Assert
+        assertThat(MetadataCatalog.foldersOf("")).containsExactly("");
+        assertThat(MetadataCatalog.foldersOf("a/b/")).containsExactly("", "a/", "a/b/");
+    }
+
+    @Test
+    void record_newFile_addsSizeAndCountToEveryAncestor() {
+        // Arrange
+        when(fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory("alice", "a/b/", "x.txt", false))
+                .thenReturn(Optional.empty());
+        when(folderUsageRepository.findByOwnerAndPathIn("alice", List.of("", "a/", "a/b/")))
+                .thenReturn(List.of(new FolderUsage("alice", "", 10L, 1L)));
+
+        // Act
+        metadataCatalog.record(new FilePath("alice", "a/b/x.txt"), 5);
+
+        // Assert
+        verify(folderUsageRepository, never()).insertIfAbsent("alice", "");
+        verify(folderUsageRepository).insertIfAbsent("alice", "a/");
+        verify(folderUsageRepository).insertIfAbsent("alice", "a/b/");
+        verify(folderUsageRepository).add("alice", List.of("", "a/", "a/b/"), 5, 1);
+    }
+
+    @Test
+    void record_overwrittenFile_addsOnlyTheSizeDifference() {
+        // Arrange
+        var existing = new FileMetadata("alice", "a/", "x.txt", 8L, false);
+        when(fileMetadataRepository.findByOwnerAndParentPathAndNameAndDirectory("alice", "a/", "x.txt", false))
+                .thenReturn(Optional.of(existing));
+
+        // Act
+        metadataCatalog.record(new FilePath("alice", "a/x.txt"), 5);
+
+        // Assert
+        assertThat(existing.getSize()).isEqualTo(5L);
+        verify(folderUsageRepository).add("alice", List.of("", "a/"), -3, 0);
+    }
+
+    @Test
+    void remove_folder_subtractsItsTotalsFromAncestors_andDropsItsRows() {
+        // Arrange
+        when(folderUsageRepository.findByOwnerAndPath("alice", "a/b/"))
+                .thenReturn(Optional.of(new FolderUsage("alice", "a/b/", 40L, 4L)));
+
+        // Act
+        metadataCatalog.remove(new FilePath("alice", "a/b/"));
+
+        // Assert
+        verify(folderUsageRepository).add("alice", List.of("", "a/"), -40, -4);
+        verify(folderUsageRepository).deleteByPathLike("alice", "a/b/%");
+    }
+
+    @Test
+    void move_folder_shiftsTotalsBetweenAncestors_andRebasesSubtreeRows() {
+        // Arrange
+        when(folderUsageRepository.findByOwnerAndPath("alice", "a/b/"))
+                .thenReturn(Optional.of(new FolderUsage("alice", "a/b/", 40L, 4L)));
+
+        // Act
+        metadataCatalog.move(new FilePath("alice", "a/b/"), new FilePath("alice", "c/"));
+
+        // Assert
+        var order = inOrder(folderUsageRepository);
+        order.verify(folderUsageRepository).add("alice", List.of("", "a/"), -40, -4);
+        order.verify(folderUsageRepository).rebasePath("alice", "a/b/%", 4, "c/");
+        order.verify(folderUsageRepository).add("alice", List.of(""), 40, 4);
+    }
+}
@@ -0,0 +1,120 @@
+package com.al3000.cloudbase.service.index;
+
+import com.al3000.cloudbase.dto.FileFullInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.service.search.LibrarySearch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserIndexTest {
+
+    private final String username = "alice";
+
+    private UserIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new UserIndex(username);
+        index.load(new FileFullInfo(username, "a/b/", "deep.txt", 3L, false));
+        index.load(new FileFullInfo(username, "a/", "x.txt", 1L, false));
+        index.load(new FileFullInfo(username, "", "root.txt", 2L, false));
+        index.markReady();
+    }
+
+    private FilePath path(String path) {
+        return new FilePath(username, path);
+    }
+
+    @Test
+    void list_returnsDirectChildren_includingImplicitDirectories() {
+        // Act & Assert
+        assertThat(index.list("").map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/"), path("root.txt"));
+        assertThat(index.list("a/").map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/b/"), path("a/x.txt"));
+    }
+
+    @Test
+    void list_withCursor_continuesAfterItAndSkipsDirectorySubtree() {
+        // Arrange
+        index.load(new FileFullInfo(username, "a/", "y.txt", 1L, false));
+
+        // Act & Assert
+        assertThat(index.list("a/", null, 2).map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/b/"), path("a/x.txt"));
+        assertThat(index.list("a/", "a/b/", 10).map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/x.txt"), path("a/y.txt"));
+        assertThat(index.list("a/", "a/y.txt", 10)).isEmpty();
+    }
+
+    @Test
+    void walk_returnsWholeSubtree_withoutFolderItself() {
+        // Act & Assert
+        assertThat(index.walk("a/").map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/b/"), path("a/b/deep.txt"), path("a/x.txt"));
+    }
+
+    @Test
+    void remove_folder_removesSubtree() {
+        // Act
+        index.remove(path("a/b/"));
+
+        // Assert
+        assertThat(index.walk("").map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/"), path("a/x.txt"), path("root.txt"));
+    }
+
+    @Test
+    void move_folder_rebasesSubtree() {
+        // Act
+        index.move(path("a/"), path("c/d/"));
+
+        // Assert
+        assertThat(index.walk("").map(FileFullInfo::getFilePath))
+                .containsExactly(
+                        path("c/"),
+                        path("c/d/"),
+                        path("c/d/b/"),
+                        path("c/d/b/deep.txt"),
+                        path("c/d/x.txt"),
+                        path("root.txt"));
+    }
+
+    @Test
+    void search_matchesFileNamesInsideFolder_andForgetsRemovedFiles() {
+        // Arrange
+        index.recordFile(path("a/b/deep-copy.txt"), 4L);
+        index.remove(path("a/b/deep.txt"));
+
+        // Act & Assert
+        assertThat(index.search("", "deep", new LibrarySearch().compile("deep")).map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/b/deep-copy.txt"));
+        assertThat(index.search("a/", ".txt", new LibrarySearch().compile(".txt")).map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/b/deep-copy.txt"), path("a/x.txt"));
+    }
+
+    @Test
+    void search_returnsMatchesInObjectKeyOrder_likeTheStorageListing() {
+        // Arrange
+        index.recordFile(path("a/b.txt"), 1L);
+        index.recordFile(path("a/z.txt"), 1L);
+
+        // Act & Assert
+        assertThat(index.search("", ".txt", new LibrarySearch().compile(".txt")).map(FileFullInfo::getFilePath))
+                .containsExactly(path("a/b.txt"), path("a/b/deep.txt"), path("a/x.txt"), path("a/z.txt"), path("root.txt"));
+    }
+
+    @Test
+    void updatesDuringLoading_invalidateSnapshot() {
+        // Arrange
+        var loading = new UserIndex(username);
+
+        // Act
+        loading.recordFile(path("late.txt"), 1L);
+
+        // Assert
+        assertThat(loading.markReady()).isFalse();
+    }
+}
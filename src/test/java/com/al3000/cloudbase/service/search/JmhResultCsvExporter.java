@@ -0,0 +1,86 @@
+package com.al3000.cloudbase.service.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Flattens the JMH JSON report into rows that share the dataset columns of StringSearchBenchmarkCsvExporter
+public final class JmhResultCsvExporter {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        Path input = Path.of(System.getProperty(
+                "searchBenchmark.jmhResults",
+                "build/reports/benchmarks/search/jmh.json"
+        ));
+        Path output = Path.of(System.getProperty(
+                "searchBenchmark.jmhCsv",
+                "build/reports/benchmarks/search/jmh.csv"
+        ));
+
+        Files.write(output, toCsv(new ObjectMapper().readTree(input.toFile())), StandardCharsets.UTF_8);
+    }
+
+    static List<String> toCsv(JsonNode results) {
+        Map<String, SearchBenchmarkDataset> datasets = new HashMap<>();
+        List<String> lines = new ArrayList<>();
+        lines.add(header());
+
+        for (JsonNode result : results) {
+            JsonNode params = result.path("params");
+            // The jmh task runs every benchmark of the source set, only search ones have a dataset
+            if (!params.hasNonNull("dataset")) {
+                continue;
+            }
+            SearchBenchmarkDataset dataset = datasets.computeIfAbsent(
+                    params.path("dataset").asText(), SearchBenchmarkDataset::parse);
+            JsonNode primary = result.path("primaryMetric");
+
+            lines.add(String.join(",",
+                    dataset.type(),
+                    dataset.name(),
+                    Integer.toString(dataset.candidates().size()),
+                    Long.toString(dataset.searchableFiles()),
+                    Integer.toString(dataset.query().length()),
+                    Integer.toString(StringSearchBenchmarkCsvExporter.averageNameLength(dataset.candidates())),
+                    params.path("algorithm").asText(),
+                    result.path("mode").asText(),
+                    format(primary.path("score").asDouble()),
+                    format(primary.path("scoreError").asDouble()),
+                    primary.path("scoreUnit").asText(),
+                    allocation(result.path("secondaryMetrics"))
+            ));
+        }
+        return lines;
+    }
+
+    private static String header() {
+        return "dataset_type,dataset_name,candidate_count,searchable_files,query_length,mean_name_length,algorithm,mode,score,score_error,unit,alloc_bytes_per_op";
+    }
+
+    // Older JMH versions prefix profiler metrics with a middle dot
+    private static String allocation(JsonNode secondaryMetrics) {
+        var fields = secondaryMetrics.fields();
+        while (fields.hasNext()) {
+            var field = fields.next();
+            if (field.getKey().endsWith(ALLOCATION_METRIC)) {
+                return format(field.getValue().path("score").asDouble());
+            }
+        }
+        return "";
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "" : String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,79 @@
+package com.al3000.cloudbase.service.search;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JmhResultCsvExporterTest {
+
+    @Test
+    void parse_buildsDatasetsNamedLikeTheCsvExporter() {
+        // Act
+        var synthetic = SearchBenchmarkDataset.parse("SYN_N200");
+        var hard = SearchBenchmarkDataset.parse("HARD_N10_L64");
+
+        // Assert
+        assertThat(synthetic.type()).isEqualTo("synthetic");
+        assertThat(synthetic.candidates()).hasSize(200);
+        assertThat(hard.candidates()).hasSize(10)
+                .allSatisfy(file -> assertThat(file.name()).hasSize(64));
+        assertThat(SearchBenchmarkDataset.parse("REAL").candidates())
+                .isEqualTo(StringSearchBenchmark.RealisticCandidates);
+        assertThatThrownBy(() -> SearchBenchmarkDataset.parse("HARD_N10"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void toCsv_flattensScoresAndAllocationRate() throws Exception {
+        // Arrange
+        var json = """
+                [{
+                  "benchmark": "com.al3000.cloudbase.service.search.StringSearchJmhBenchmark.search",
+                  "mode": "avgt",
+                  "params": {"algorithm": "Knuth-Morris-Pratt", "dataset": "HARD_N10_L64"},
+                  "primaryMetric": {"score": 1.23456, "scoreError": 0.01, "scoreUnit": "us/op"},
+                  "secondaryMetrics": {"gc.alloc.rate.norm": {"score": 48.0}}
+                }]
+                """;
+
+        // Act
+        List<String> lines = JmhResultCsvExporter.toCsv(new ObjectMapper().readTree(json));
+
+        // Assert
+        assertThat(lines).hasSize(2);
+        assertThat(lines.getFirst()).startsWith("dataset_type,dataset_name,candidate_count,searchable_files,query_length,mean_name_length,");
+        assertThat(lines.getLast())
+                .isEqualTo("hard,HARD_N10_L64,10,10,512,64,Knuth-Morris-Pratt,avgt,1.235,0.010,us/op,48.000");
+    }
+
+    @Test
+    void toCsv_skipsBenchmarksWithoutDataset() throws Exception {
+        // Arrange
+        var json = """
+                [{
+                  "benchmark": "com.al3000.cloudbase.repository.ObjectKeyParserJmhBenchmark.parse",
+                  "mode": "avgt",
+                  "params": {"layout": "DEEP"},
+                  "primaryMetric": {"score": 0.5, "scoreError": 0.01, "scoreUnit": "us/op"},
+                  "secondaryMetrics": {}
+                }, {
+                  "benchmark": "com.al3000.cloudbase.service.search.StringSearchJmhBenchmark.search",
+                  "mode": "avgt",
+                  "params": {"algorithm": "Knuth-Morris-Pratt", "dataset": "HARD_N10_L64"},
+                  "primaryMetric": {"score": 1.23456, "scoreError": 0.01, "scoreUnit": "us/op"},
+                  "secondaryMetrics": {"gc.alloc.rate.norm": {"score": 48.0}}
+                }]
+                """;
+
+        // Act
+        List<String> lines = JmhResultCsvExporter.toCsv(new ObjectMapper().readTree(json));
+
+        // Assert
+        assertThat(lines).hasSize(2);
+        assertThat(lines.getLast()).startsWith("hard,HARD_N10_L64,");
+    }
+}
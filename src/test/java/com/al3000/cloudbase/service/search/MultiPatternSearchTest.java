@@ -0,0 +1,98 @@
+package com.al3000.cloudbase.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiPatternSearchTest {
+
+    private final MultiPatternSearch search = new MultiPatternSearch();
+
+    @Test
+    void terms_splitsOnWhitespaceAndDropsDuplicates() {
+        assertThat(search.terms("  report\tinvoice  report 2024 ")).containsExactly("report", "invoice", "2024");
+        assertThat(search.terms("   ")).isEmpty();
+    }
+
+    @Test
+    void matches_anyMode_needsOneTerm() {
+        // Arrange
+        var automaton = search.compile(List.of("report", "invoice"), MatchMode.ANY);
+
+        // Act & Assert
+        assertThat(automaton.matches("q3-invoice.pdf")).isTrue();
+        assertThat(automaton.matches("report.txt")).isTrue();
+        assertThat(automaton.matches("notes.txt")).isFalse();
+    }
+
+    @Test
+    void matches_allMode_needsEveryTerm() {
+        // Arrange
+        var automaton = search.compile(List.of("report", "invoice", "2024"), MatchMode.ALL);
+
+        // Act & Assert
+        assertThat(automaton.matches("2024-invoice-report.pdf")).isTrue();
+        assertThat(automaton.matches("invoice-report.pdf")).isFalse();
+    }
+
+    @Test
+    void matches_findsOverlappingAndNestedTerms() {
+        // Arrange
+        var automaton = search.compile(List.of("he", "she", "hers", "his"), MatchMode.ALL);
+
+        // Act & Assert
+        // "she" ends inside "hers", "he" is only reachable through failure links
+        assertThat(automaton.matches("ushers-his")).isTrue();
+        assertThat(automaton.matches("ushers")).isFalse();
+    }
+
+    @Test
+    void matches_repeatedPrefixesFallBackCorrectly() {
+        // Arrange
+        var automaton = search.compile(List.of("aab", "abc"), MatchMode.ALL);
+
+        // Act & Assert
+        assertThat(automaton.matches("aaabc")).isTrue();
+        assertThat(automaton.matches("aaacb")).isFalse();
+    }
+
+    @Test
+    void matches_withoutTerms_acceptsEverything() {
+        var automaton = search.compile(List.of("", ""), MatchMode.ALL);
+
+        assertThat(automaton.matches("anything")).isTrue();
+    }
+
+    @Test
+    void matches_agreesWithContainsForEveryTerm() {
+        // Arrange
+        List<String> terms = List.of("ab", "ba", "aba", "bb");
+        var any = search.compile(terms, MatchMode.ANY);
+        var all = search.compile(terms, MatchMode.ALL);
+
+        // Act & Assert
+        IntStream.range(0, 1 << 8).forEach(bits -> {
+            var text = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                text.append((bits >> i & 1) == 0 ? 'a' : 'b');
+            }
+            var name = text.toString();
+            assertThat(any.matches(name)).isEqualTo(terms.stream().anyMatch(name::contains));
+            assertThat(all.matches(name)).isEqualTo(terms.stream().allMatch(name::contains));
+        });
+    }
+
+    @Test
+    void compile_rejectsTooManyTerms() {
+        var terms = IntStream.rangeClosed(0, MultiPatternSearch.MAX_TERMS).mapToObj(i -> "t" + i).toList();
+
+        assertThatThrownBy(() -> search.compile(terms, MatchMode.ANY))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(search.compile(Collections.nCopies(100, "same"), MatchMode.ANY).matches("same")).isTrue();
+    }
+}
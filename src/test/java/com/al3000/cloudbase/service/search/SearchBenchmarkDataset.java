@@ -0,0 +1,37 @@
+package com.al3000.cloudbase.service.search;
+
+import com.al3000.cloudbase.dto.FileInfo;
+
+import java.util.List;
+
+// Datasets addressed by the names StringSearchBenchmarkCsvExporter writes: REAL, SYN_N<size>, HARD_N<size>_L<length>
+public record SearchBenchmarkDataset(String type, String name, List<FileInfo> candidates, String query) {
+
+    public static SearchBenchmarkDataset parse(String name) {
+        String[] parts = name.split("_");
+        return switch (parts[0]) {
+            case "REAL" -> new SearchBenchmarkDataset("realistic", name,
+                    StringSearchBenchmark.RealisticCandidates, "aba");
+            case "SYN" -> {
+                var query = StringSearchBenchmarkCsvExporter.DEFAULT_QUERY;
+                var candidates = StringSearchBenchmark.SyntheticCandidates(query, number(parts, 1, 'N'));
+                yield new SearchBenchmarkDataset("synthetic", name, candidates, query);
+            }
+            case "HARD" -> new SearchBenchmarkDataset("hard", name,
+                    StringSearchBenchmark.HardCandidates(number(parts, 1, 'N'), number(parts, 2, 'L')),
+                    StringSearchBenchmarkCsvExporter.DEFAULT_HARD_QUERY);
+            default -> throw new IllegalArgumentException("Unknown benchmark dataset " + name);
+        };
+    }
+
+    public long searchableFiles() {
+        return candidates.stream().filter(file -> "File".equals(file.type())).count();
+    }
+
+    private static int number(String[] parts, int index, char prefix) {
+        if (parts.length <= index || parts[index].charAt(0) != prefix) {
+            throw new IllegalArgumentException("Expected " + prefix + "<number> in " + String.join("_", parts));
+        }
+        return Integer.parseInt(parts[index].substring(1));
+    }
+}
@@ -0,0 +1,79 @@
+package com.al3000.cloudbase.service.search;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StringSearchAlgorithmTest {
+
+    static List<StringSearchAlgorithm> algorithms() {
+        return List.of(new NaiveSearch(), new KMPSearch(), new HorspoolSearch(), new LibrarySearch());
+    }
+
+    private static String binary(int bits, int length) {
+        var text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append((bits >> i & 1) == 0 ? 'a' : 'b');
+        }
+        return text.toString();
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void compile_agreesWithStringContains(StringSearchAlgorithm algorithm) {
+        // Arrange
+        var patterns = IntStream.range(0, 1 << 4)
+                .mapToObj(bits -> binary(bits, 1 + bits % 4))
+                .toList();
+
+        // Act & Assert
+        for (var pattern : patterns) {
+            var compiled = algorithm.compile(pattern);
+            IntStream.range(0, 1 << 7).mapToObj(bits -> binary(bits, 7)).forEach(text -> {
+                assertThat(compiled.matches(text)).as("%s in %s", pattern, text).isEqualTo(text.contains(pattern));
+                assertThat(algorithm.contains(text, pattern)).isEqualTo(text.contains(pattern));
+            });
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void compile_handlesEdgeCasesAndWideCharacters(StringSearchAlgorithm algorithm) {
+        // 'Ё' and 'ā' share the low byte 0x01 and must not break the Horspool shift table
+        assertThat(algorithm.compile("").matches("")).isTrue();
+        assertThat(algorithm.compile("long-pattern").matches("short")).isFalse();
+        assertThat(algorithm.compile("отчёт").matches("годовой-отчёт-2024.pdf")).isTrue();
+        assertThat(algorithm.compile("xЁy").matches("ЁāxāyxЁy")).isTrue();
+        assertThat(algorithm.compile("xЁy").matches("xāyxāy")).isFalse();
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void compile_returnsPatternSharedBetweenThreads(StringSearchAlgorithm algorithm) throws Exception {
+        // Arrange
+        var compiled = algorithm.compile("pattern");
+        var candidates = StringSearchBenchmark.SyntheticCandidates("pattern", 2000);
+
+        // Act
+        List<Long> counts;
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            var futures = IntStream.range(0, 8)
+                    .mapToObj(i -> executor.submit(() -> candidates.stream().filter(file -> compiled.matches(file.name())).count()))
+                    .toList();
+            counts = new ArrayList<>();
+            for (var future : futures) {
+                counts.add(future.get());
+            }
+        }
+
+        // Assert
+        long expected = candidates.stream().filter(file -> file.name().contains("pattern")).count();
+        assertThat(counts).containsOnly(expected);
+    }
+}
@@ -2,7 +2,10 @@ package com.al3000.cloudbase.service.search;
 
 import com.al3000.cloudbase.dto.FileInfo;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 public class StringSearchBenchmark {
@@ -42,6 +45,22 @@ public class StringSearchBenchmark {
                 .toList();
     }
 
+    public static List<FileInfo> MultiTermCandidates(List<String> terms, int size)
+    {
+        return IntStream.range(0, size)
+                .mapToObj(index -> {
+                    StringBuilder name = new StringBuilder("archive-" + index);
+                    for (int term = 0; term < terms.size(); term++) {
+                        // Each term appears in a different, overlapping subset of names
+                        if (index % (term + 2) == 0) {
+                            name.append('-').append(terms.get(term));
+                        }
+                    }
+                    return new FileInfo("multi/", name.append(".pdf").toString(), 512L + index, "File");
+                })
+                .toList();
+    }
+
     public StringSearchBenchmark() {
         this(List.of(
                 new NaiveSearch(),
@@ -60,6 +79,34 @@ public class StringSearchBenchmark {
                 .toList();
     }
 
+    // Aho-Corasick against checking every term separately with single-pattern algorithms
+    public List<SearchAlgorithmMeasurement> compareMultiPattern(
+            List<FileInfo> candidates,
+            List<String> terms,
+            MatchMode mode,
+            int repetitions
+    ) {
+        int effectiveRepetitions = Math.max(1, repetitions);
+        MultiPatternSearch multiPatternSearch = new MultiPatternSearch();
+        List<SearchAlgorithmMeasurement> measurements = new ArrayList<>();
+
+        measurements.add(measure(multiPatternSearch.name(), effectiveRepetitions, () -> {
+            MultiPatternSearch.Automaton automaton = multiPatternSearch.compile(terms, mode);
+            return filesMatching(candidates, automaton::matches);
+        }));
+        for (StringSearchAlgorithm algorithm : List.of(new KMPSearch(), new LibrarySearch())) {
+            measurements.add(measure(algorithm.name() + " (loop)", effectiveRepetitions,
+                    () -> filesMatching(candidates, name -> loopMatches(algorithm, name, terms, mode))));
+        }
+        return measurements;
+    }
+
+    public List<FileInfo> referenceMultiMatches(List<FileInfo> candidates, List<String> terms, MatchMode mode) {
+        return filesMatching(candidates, name -> mode == MatchMode.ANY
+                ? terms.stream().anyMatch(name::contains)
+                : terms.stream().allMatch(name::contains));
+    }
+
     public List<FileInfo> referenceMatches(List<FileInfo> candidates, String query) {
         return candidates.stream()
                 .filter(file -> file.type().equals("File"))
@@ -91,11 +138,43 @@ public class StringSearchBenchmark {
         return new SearchAlgorithmMeasurement(algorithm.name(), matches, elapsedNanos, repetitions);
     }
 
-    private List<FileInfo> matchesFor(List<FileInfo> candidates, String query, StringSearchAlgorithm algorithm) {
+    private SearchAlgorithmMeasurement measure(String name, int repetitions, Supplier<List<FileInfo>> search) {
+        //Warmup
+        List<FileInfo> matches = search.get();
+
+        long start = System.nanoTime();
+
+        for (int run = 0; run < repetitions; run++) {
+            matches = search.get();
+        }
+
+        long elapsedNanos = Math.max(1L, System.nanoTime() - start);
+        return new SearchAlgorithmMeasurement(name, matches, elapsedNanos, repetitions);
+    }
+
+    private static boolean loopMatches(StringSearchAlgorithm algorithm, String name, List<String> terms, MatchMode mode) {
+        for (String term : terms) {
+            boolean found = algorithm.contains(name, term);
+            if (found && mode == MatchMode.ANY) {
+                return true;
+            }
+            if (!found && mode == MatchMode.ALL) {
+                return false;
+            }
+        }
+        return mode == MatchMode.ALL;
+    }
+
+    private static List<FileInfo> filesMatching(List<FileInfo> candidates, Predicate<String> matcher) {
         return candidates.stream()
                 .filter(file -> file.type().equals("File"))
-                .filter(file -> algorithm.contains(file.name(), query))
+                .filter(file -> matcher.test(file.name()))
                 .toList();
     }
+
+    // Compiles once per run, the same way FileService does per request
+    private List<FileInfo> matchesFor(List<FileInfo> candidates, String query, StringSearchAlgorithm algorithm) {
+        return filesMatching(candidates, algorithm.compile(query)::matches);
+    }
 }
 
@@ -12,11 +12,11 @@ import java.util.List;
 
 public final class StringSearchBenchmarkCsvExporter {
 
-    private static final String DEFAULT_QUERY = "]";
-    private static final String DEFAULT_HARD_QUERY = "a".repeat(511) + "b";
+    static final String DEFAULT_QUERY = "]";
+    static final String DEFAULT_HARD_QUERY = "a".repeat(511) + "b";
     private static final int DEFAULT_SYNTHETIC_REPETITIONS = 100;
     private static final int DEFAULT_HARD_REPETITIONS = 10;
-    private static final int DEFAULT_HARD_SIZE = 100;
+    static final int DEFAULT_HARD_SIZE = 100;
 
 
     public static void main(String[] args) throws IOException {
@@ -107,7 +107,7 @@ public final class StringSearchBenchmarkCsvExporter {
         return "dataset_type,dataset_name,candidate_count,searchable_files,query_length,mean_name_length,repetitions,matches,elapsed_nanos_naive,elapsed_nanos_kmp";
     }
 
-    private static int averageNameLength(List<FileInfo> candidates) {
+    static int averageNameLength(List<FileInfo> candidates) {
         return (int) Math.round(candidates.stream()
                 .filter(file -> "File".equals(file.type()))
                 .mapToInt(file -> file.name().length())
@@ -123,7 +123,7 @@ public final class StringSearchBenchmarkCsvExporter {
                 .toArray();
     }
 
-    private static String datasetName(String prefix, int size, int length) {
+    static String datasetName(String prefix, int size, int length) {
         return prefix + "_N" + size + "_L" + length;
     }
 
@@ -3,6 +3,7 @@ package com.al3000.cloudbase.service.search;
 import com.al3000.cloudbase.dto.FileInfo;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.List;
@@ -80,6 +81,29 @@ class StringSearchBenchmarkTest {
         printReport("mean file name length " + length+ ", repeated-prefix workload", candidates, query, measurements);
     }
 
+    @ParameterizedTest
+    @EnumSource(MatchMode.class)
+    void compareMultiPattern_matchesReferenceForEveryMode(MatchMode mode) {
+        List<String> terms = List.of("report", "invoice", "2024", "draft");
+        List<FileInfo> candidates = StringSearchBenchmark.MultiTermCandidates(terms, 5000);
+
+        List<SearchAlgorithmMeasurement> measurements = benchmark.compareMultiPattern(candidates, terms, mode, 10);
+        List<FileInfo> expected = benchmark.referenceMultiMatches(candidates, terms, mode);
+
+        assertThat(expected).isNotEmpty();
+        assertThat(measurements)
+                .extracting(SearchAlgorithmMeasurement::algorithm)
+                .containsExactly("Aho-Corasick", "Knuth-Morris-Pratt (loop)", "Library (loop)");
+        assertThat(measurements)
+                .allSatisfy(measurement -> {
+                    assertThat(measurement.matches()).containsExactlyElementsOf(expected);
+                    assertThat(measurement.repetitions()).isEqualTo(10);
+                    assertThat(measurement.elapsedNanos()).isPositive();
+                });
+
+        printReport(mode + " of " + terms.size() + " terms", candidates, String.join(" ", terms), measurements);
+    }
+
     private void printReport(
             String label,
             List<FileInfo> candidates,
@@ -0,0 +1,115 @@
+package com.al3000.cloudbase.service.search;
+
+import com.al3000.cloudbase.dto.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrigramIndexTest {
+
+    private final StringSearchAlgorithm verifier = new LibrarySearch();
+
+    private TrigramIndex<String> indexOf(String... names) {
+        var index = new TrigramIndex<String>();
+        for (var name : names) {
+            index.put(name, name, name);
+        }
+        return index;
+    }
+
+    @Test
+    void search_returnsOnlyVerifiedMatches() {
+        // Arrange
+        var index = indexOf("report-2024.pdf", "invoice-2024.pdf", "2024-report.txt", "rep.txt");
+
+        // Act & Assert
+        assertThat(index.search("report", verifier.compile("report"))).containsExactly("report-2024.pdf", "2024-report.txt");
+        assertThat(index.search("4-r", verifier.compile("4-r"))).containsExactly("2024-report.txt");
+        assertThat(index.search("missing", verifier.compile("missing"))).isEmpty();
+    }
+
+    @Test
+    void search_withShortQuery_fallsBackToScan() {
+        // Arrange
+        var index = indexOf("ab", "cab", "xyz");
+
+        // Act & Assert
+        assertThat(index.search("ab", verifier.compile("ab"))).containsExactly("ab", "cab");
+        assertThat(index.search("", verifier.compile(""))).containsExactly("ab", "cab", "xyz");
+    }
+
+    @Test
+    void search_withSeveralTerms_unitesOrIntersectsPostings() {
+        // Arrange
+        var index = indexOf("invoice-report.pdf", "report.txt", "invoice.txt", "notes.txt");
+        var terms = List.of("report", "invoice");
+        var multi = new MultiPatternSearch();
+
+        // Act & Assert
+        assertThat(index.search(terms, MatchMode.ANY, multi.compile(terms, MatchMode.ANY)))
+                .containsExactly("invoice-report.pdf", "report.txt", "invoice.txt");
+        assertThat(index.search(terms, MatchMode.ALL, multi.compile(terms, MatchMode.ALL)))
+                .containsExactly("invoice-report.pdf");
+    }
+
+    @Test
+    void search_withShortTerm_scansForAnyAndIgnoresItForCandidatesOfAll() {
+        // Arrange
+        var index = indexOf("a-report.txt", "b.txt", "report.txt");
+        var terms = List.of("a-", "report");
+        var multi = new MultiPatternSearch();
+
+        // Act & Assert
+        assertThat(index.search(terms, MatchMode.ANY, multi.compile(terms, MatchMode.ANY)))
+                .containsExactly("a-report.txt", "report.txt");
+        assertThat(index.search(terms, MatchMode.ALL, multi.compile(terms, MatchMode.ALL)))
+                .containsExactly("a-report.txt");
+    }
+
+    @Test
+    void put_withSameKey_replacesDocument() {
+        // Arrange
+        var index = new TrigramIndex<String>();
+        index.put("k", "old-name", "old");
+
+        // Act
+        index.put("k", "new-name", "new");
+
+        // Assert
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.search("old", verifier.compile("old"))).isEmpty();
+        assertThat(index.search("new", verifier.compile("new"))).containsExactly("new");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {100, 5000})
+    void search_afterManyRemovals_matchesLinearScan(int datasetSize) {
+        // Arrange
+        String query = "pattern";
+        var candidates = StringSearchBenchmark.SyntheticCandidates(query, datasetSize);
+        var index = new TrigramIndex<FileInfo>();
+        candidates.forEach(file -> index.put(file.name(), file.name(), file));
+        // Removing two thirds of the documents forces a compaction on the larger dataset
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i % 3 != 0) {
+                index.remove(candidates.get(i).name());
+            }
+        }
+
+        // Act
+        var result = index.search(query, verifier.compile(query));
+
+        // Assert
+        var expected = IntStream.range(0, candidates.size())
+                .filter(i -> i % 3 == 0)
+                .mapToObj(candidates::get)
+                .filter(file -> file.name().contains(query))
+                .toList();
+        assertThat(result).containsExactlyElementsOf(expected);
+    }
+}
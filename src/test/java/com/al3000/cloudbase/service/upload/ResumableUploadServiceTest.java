@@ -0,0 +1,191 @@
+package com.al3000.cloudbase.service.upload;
+
+import com.al3000.cloudbase.dto.FileInfo;
+import com.al3000.cloudbase.dto.FilePath;
+import com.al3000.cloudbase.dto.UploadPart;
+import com.al3000.cloudbase.dto.UploadSession;
+import com.al3000.cloudbase.exception.FileDoesNotExistsException;
+import com.al3000.cloudbase.exception.QuotaExceededException;
+import com.al3000.cloudbase.repository.FileRepository;
+import com.al3000.cloudbase.repository.UploadSessionRepository;
+import com.al3000.cloudbase.service.FileService;
+import com.al3000.cloudbase.service.StorageQuota;
+import com.al3000.cloudbase.service.UploadEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadServiceTest {
+    private static final long MIB = 1024 * 1024;
+
+    @Mock
+    UploadSessionRepository uploadSessionRepository;
+    @Mock
+    UploadEngine uploadEngine;
+    @Mock
+    FileRepository fileRepository;
+    @Mock
+    FileService fileService;
+    @Mock
+    StorageQuota storageQuota;
+
+    ResumableUploadService service;
+
+    private final String username = "alice";
+    private final UploadSession session = new UploadSession("id-1", username, "docs/big.iso", "application/x-iso9660-image");
+
+    @BeforeEach
+    void setUp() {
+        service = new ResumableUploadService(
+                uploadSessionRepository, uploadEngine, fileRepository, fileService, storageQuota, Duration.ofDays(1));
+    }
+
+    @Test
+    void initiate_savesSessionForTargetFile() {
+        // Act
+        var status = service.initiate(new FilePath(username, "docs/big.iso"), "application/x-iso9660-image");
+
+        // Assert
+        var captor = ArgumentCaptor.forClass(UploadSession.class);
+        verify(uploadSessionRepository).save(captor.capture());
+        assertThat(captor.getValue().id()).isEqualTo(status.uploadId());
+        assertThat(captor.getValue().target()).isEqualTo(new FilePath(username, "docs/big.iso"));
+        assertThat(status.parts()).isEmpty();
+    }
+
+    @Test
+    void initiate_forFolder_isRejected() {
+        assertThatThrownBy(() -> service.initiate(new FilePath(username, "docs/"), null))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(uploadSessionRepository);
+    }
+
+    @Test
+    void uploadPart_stagesBodyAndRecordsStoredSize() throws Exception {
+        // Arrange
+        when(uploadSessionRepository.find("id-1")).thenReturn(Optional.of(session));
+        when(uploadEngine.uploadStaged(any(), eq(-1L), eq(".uploads/id-1/00003"))).thenReturn(7L);
+
+        // Act
+        var part = service.uploadPart(username, "id-1", 3, InputStream.nullInputStream(), -1L);
+
+        // Assert
+        assertThat(part).isEqualTo(new UploadPart(3, 7L));
+        verify(uploadSessionRepository).savePart("id-1", part);
+    }
+
+    @Test
+    void uploadPart_countsOtherStagedParts_andIsRefusedOverQuota() throws Exception {
+        // Arrange
+        when(uploadSessionRepository.find("id-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.parts("id-1")).thenReturn(List.of(new UploadPart(1, 5 * MIB), new UploadPart(2, 5 * MIB)));
+        when(storageQuota.reserve(session.target(), 5 * MIB + 3)).thenThrow(new QuotaExceededException("full"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> service.uploadPart(username, "id-1", 2, InputStream.nullInputStream(), 3L))
+                .isInstanceOf(QuotaExceededException.class);
+        verify(uploadEngine, never()).uploadStaged(any(), anyLong(), anyString());
+        verify(uploadSessionRepository, never()).savePart(anyString(), any());
+    }
+
+    @Test
+    void uploadPart_ofAnotherUser_isNotFound() throws Exception {
+        // Arrange
+        when(uploadSessionRepository.find("id-1")).thenReturn(Optional.of(session));
+
+        // Act & Assert
+        assertThatThrownBy(() -> service.uploadPart("mallory", "id-1", 1, InputStream.nullInputStream(), 0L))
+                .isInstanceOf(FileDoesNotExistsException.class);
+        verify(uploadEngine, never()).uploadStaged(any(), anyLong(), anyString());
+    }
+
+    @Test
+    void complete_composesPartsInOrder_thenCleansUp() throws Exception {
+        // Arrange
+        when(uploadSessionRepository.find("id-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.parts("id-1")).thenReturn(List.of(
+                new UploadPart(1, 5 * MIB), new UploadPart(2, 5 * MIB), new UploadPart(3, 10L)));
+        var keys = List.of(".uploads/id-1/00001", ".uploads/id-1/00002", ".uploads/id-1/00003");
+        var info = new FileInfo("docs/", "big.iso", 10 * MIB + 10, "FILE");
+        when(fileService.uploadComposed(keys, 10 * MIB + 10, session.contentType(), session.target())).thenReturn(info);
+
+        // Act
+        var result = service.complete(username, "id-1");
+
+        // Assert
+        assertThat(result).isEqualTo(info);
+        verify(uploadSessionRepository).delete("id-1");
+        verify(fileRepository).removeKeys(keys);
+    }
+
+    @Test
+    void complete_withGapOrSmallPart_keepsSession() throws Exception {
+        // Arrange
+        when(uploadSessionRepository.find("id-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.parts("id-1"))
+                .thenReturn(List.of(new UploadPart(1, 5 * MIB), new UploadPart(3, 1L)))
+                .thenReturn(List.of(new UploadPart(1, MIB), new UploadPart(2, 1L)));
+
+        // Act & Assert
+        assertThatThrownBy(() -> service.complete(username, "id-1"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Part 2 is missing");
+        assertThatThrownBy(() -> service.complete(username, "id-1"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Part 1");
+        verifyNoInteractions(fileService);
+        verify(uploadSessionRepository, never()).delete(any());
+    }
+
+    @Test
+    void removeAbandonedParts_removesOnlyExpiredUploads() {
+        // Arrange
+        when(fileRepository.listKeys(".uploads/")).thenReturn(Stream.of(
+                ".uploads/id-1/00001", ".uploads/gone/00001", ".uploads/gone/00002"));
+        when(uploadSessionRepository.find("id-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.find("gone")).thenReturn(Optional.empty());
+        when(fileRepository.listKeysModifiedBefore(eq(".parts/"), any())).thenReturn(Stream.empty());
+
+        // Act
+        service.removeAbandonedParts();
+
+        // Assert
+        verify(fileRepository).removeKeys(List.of(".uploads/gone/00001", ".uploads/gone/00002"));
+        verifyNoMoreInteractions(fileRepository);
+    }
+
+    @Test
+    void removeAbandonedParts_removesBufferedPartsOlderThanTheCutoff() {
+        // Arrange
+        var before = Instant.now().minus(Duration.ofDays(1));
+        when(fileRepository.listKeys(".uploads/")).thenReturn(Stream.empty());
+        when(fileRepository.listKeysModifiedBefore(eq(".parts/"), any()))
+                .thenReturn(Stream.of(".parts/crashed/00001", ".parts/crashed/00002"));
+
+        // Act
+        service.removeAbandonedParts();
+
+        // Assert
+        verify(fileRepository).listKeysModifiedBefore(eq(".parts/"),
+                argThat(cutoff -> !cutoff.isBefore(before) && cutoff.isBefore(Instant.now())));
+        verify(fileRepository).removeKeys(List.of(".parts/crashed/00001", ".parts/crashed/00002"));
+    }
+}
@@ -20,6 +20,38 @@ Feature: DirectoryController directory API
     And the response JSON at index 1 should contain the field "type" with value "Directory"
     And the file service should have been asked to list folder "docs/" for user "john"
 
+  Scenario: Authenticated client lists a folder page by page
+    Given the client is authenticated as "john"
+    And the file service will return a folder page with cursor "docs/notes.txt":
+      | path  | name      | size | type      |
+      | docs/ | images/   | 0    | Directory |
+      | docs/ | notes.txt | 128  | File      |
+    When the client GETs "/page" with query parameters:
+      | path  | docs/ |
+      | limit | 2     |
+    Then the response status should be 200
+    And the response JSON should contain the field "nextCursor" with value "docs/notes.txt"
+
+  Scenario: Authenticated client reads folder usage
+    Given the client is authenticated as "john"
+    And the file service will report usage of 2048 bytes in 3 files for folder "docs/"
+    When the client GETs "/usage" with query parameters:
+      | path | docs/ |
+    Then the response status should be 200
+    And the response JSON should contain the field "size" with value "2048"
+    And the response JSON should contain the field "fileCount" with value "3"
+
+  Scenario: Authenticated client streams folder contents as NDJSON
+    Given the client is authenticated as "john"
+    And the file service will return a folder page with cursor "":
+      | path  | name      | size | type      |
+      | docs/ | images/   | 0    | Directory |
+      | docs/ | notes.txt | 128  | File      |
+    When the client GETs "" for path "docs/" with header "Accept" set to "application/x-ndjson"
+    Then the response status should be 200
+    And the response content type should contain "application/x-ndjson"
+    And the response body should have 2 lines
+
   Scenario: Authenticated client creates a folder
     Given the client is authenticated as "john"
     And the file service will create the folder result:
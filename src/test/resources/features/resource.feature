@@ -18,6 +18,17 @@ Feature: FileController resource API
     And the response body should equal "result"
     And the file service should have been asked to upload file "hello.txt" to "docs/" for user "john"
 
+  Scenario: Upload over the storage quota is rejected
+    Given the client is authenticated as "john"
+    And the file service will reject uploads with quota exceeded "Storage quota exceeded"
+    When the client uploads a file to "":
+      | filename    | hello.txt   |
+      | content     | hello world |
+      | contentType | text/plain  |
+      | path        | docs/       |
+    Then the response status should be 507
+    And the response JSON should contain the field "message" with value "Storage quota exceeded"
+
   Scenario: Authenticated client deletes a resource
     Given the client is authenticated as "john"
     And the file service will accept deletions
@@ -39,6 +50,19 @@ Feature: FileController resource API
     And the response JSON at index 0 should contain the field "name" with value "report.txt"
     And the file service should have been asked to search for "report" for user "john"
 
+  Scenario: Authenticated client streams search results as NDJSON
+    Given the client is authenticated as "john"
+    And the file service will return the following search results:
+      | path  | name        | size | type |
+      | docs/ | report.txt  | 42   | File |
+      | docs/ | report2.txt | 43   | File |
+    When the client GETs "/search" with query parameters and header "Accept" set to "application/x-ndjson":
+      | query | report |
+      | limit | 2      |
+    Then the response status should be 200
+    And the response content type should contain "application/x-ndjson"
+    And the response body should have 2 lines
+
   Rule: Move does not move any files if it has any conflicts with destination
     Scenario: Authenticated client moves a resource
       Given the client is authenticated as "john"
@@ -68,9 +92,52 @@ Feature: FileController resource API
       When the client GETs "/download" with query parameters:
         | path | docs/hello.txt |
       Then the response status should be 200
-      And the response header "Content-Disposition" should contain "docs/hello.txt.zip"
+      And the response header "Content-Disposition" should contain "docs/hello.txt"
+      And the response header "Accept-Ranges" should contain "bytes"
+      And the response header "ETag" should contain "abc123"
+      And the response content type should contain "application/octet-stream"
+      And the response body should equal "hello world"
+      And the file service should have been asked to download path "docs/hello.txt" for user "john"
+
+    Scenario: File stored with an unparseable content type is served as bytes
+      Given the client is authenticated as "john"
+      And the file service will return downloadable content "hello world" stored as "not a media type"
+      When the client GETs "/download" with query parameters:
+        | path | docs/hello.txt |
+      Then the response status should be 200
       And the response content type should contain "application/octet-stream"
       And the response body should equal "hello world"
+
+    Scenario: Client requests a byte range of a file
+      Given the client is authenticated as "john"
+      And the file service will return downloadable content "hello world"
+      When the client GETs "/download" for path "docs/hello.txt" with header "Range" set to "bytes=6-"
+      Then the response status should be 206
+      And the response header "Content-Range" should contain "bytes 6-10/11"
+      And the response body should equal "world"
+
+    Scenario: Client requests a range past the end of a file
+      Given the client is authenticated as "john"
+      And the file service will return downloadable content "hello world"
+      When the client GETs "/download" for path "docs/hello.txt" with header "Range" set to "bytes=20-30"
+      Then the response status should be 416
+      And the response header "Content-Range" should contain "bytes */11"
+
+    Scenario: Client revalidates a cached file with its ETag
+      Given the client is authenticated as "john"
+      And the file service will return downloadable content "hello world"
+      When the client GETs "/download" for path "docs/hello.txt" with header "If-None-Match" set to "\"abc123\""
+      Then the response status should be 304
+      And the response body should equal ""
+      And the file service should not have opened any file
+
+    Scenario: Client revalidates a changed file and gets the new content
+      Given the client is authenticated as "john"
+      And the file service will return downloadable content "hello world"
+      When the client GETs "/download" for path "docs/hello.txt" with header "If-None-Match" set to "\"old-etag\""
+      Then the response status should be 200
+      And the response header "ETag" should contain "abc123"
+      And the response body should equal "hello world"
       And the file service should have been asked to download path "docs/hello.txt" for user "john"
 
     Scenario: Download propagates missing-file errors through the global handler